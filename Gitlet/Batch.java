@@ -0,0 +1,100 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+
+
+//`gitlet batch <file>` runs every line of file as a gitlet command in this one process.
+//The repository is loaded once and only saved at the end, or where a line says
+//`checkpoint`, instead of after every command. Nobody is there to answer prompts, so
+//warnings are taken as a yes and interactive rebases keep every commit as it is.
+//
+//Arguments are split on whitespace. Double quotes keep an argument with spaces together
+//and a backslash inside them escapes the next character. Blank lines and lines starting
+//with # are skipped.
+
+public class Batch {
+    public static Git run(Git g, String[] tokens) throws IOException {
+        if (tokens.length != 1) {
+            System.out.println("Please give exactly one batch file.");
+            return g;
+        }
+        File script = new File(tokens[0]);
+        if (!script.exists()) {
+            System.out.println("Batch file does not exist.");
+            return g;
+        }
+        //put back afterwards: the daemon's console, or whatever a Repository was given
+        ConfirmationPolicy policy = g != null ? g.getConfirmationPolicy()
+                                              : ConfirmationPolicy.CONSOLE;
+        if (g != null) {
+            g.setConfirmationPolicy(ConfirmationPolicy.YES);
+        }
+        try (BufferedReader in = new BufferedReader(new FileReader(script))) {
+            String line;
+            int number = 0;
+            while ((line = in.readLine()) != null) {
+                number += 1;
+                String[] args = split(line);
+                if (args.length == 0) {
+                    continue;
+                }
+                try {
+                    if (args[0].equals("checkpoint")) {
+                        Serialize.serializeGit(g);
+                    } else if (args[0].equals("batch") || args[0].equals("daemon")) {
+                        System.out.println("Line " + number + ": cannot be run from a batch.");
+                    } else {
+                        g = Gitlet.execute(g, args);
+                    }
+                } catch (Exception e) {
+                    //stop here, but keep what the earlier lines did
+                    System.out.println("Line " + number + ": " + e);
+                    return g;
+                } finally {
+                    if (g != null) {
+                        g.setConfirmationPolicy(ConfirmationPolicy.YES); //init may have just made g
+                    }
+                }
+            }
+        } finally {
+            if (g != null) {
+                g.setConfirmationPolicy(policy);
+            }
+        }
+        return g;
+    }
+
+    static String[] split(String line) {
+        ArrayList<String> args = new ArrayList<String>();
+        StringBuilder arg = null; //null between arguments
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (arg == null) {
+                if (Character.isWhitespace(c)) {
+                    continue;
+                } else if (c == '#' && args.isEmpty()) {
+                    break;
+                }
+                arg = new StringBuilder();
+            }
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (quoted && c == '\\' && i + 1 < line.length()) {
+                i += 1;
+                arg.append(line.charAt(i));
+            } else if (!quoted && Character.isWhitespace(c)) {
+                args.add(arg.toString());
+                arg = null;
+            } else {
+                arg.append(c);
+            }
+        }
+        if (arg != null) {
+            args.add(arg.toString());
+        }
+        return args.toArray(new String[args.size()]);
+    }
+}
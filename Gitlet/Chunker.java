@@ -0,0 +1,81 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+
+//Splits a stream into content-defined chunks (FastCDC) for storing large files. A gear
+//hash rolls over the bytes and a chunk ends wherever its top bits are all zero, so the
+//cut points depend only on the nearby bytes: an edit in one region of a file moves the
+//cuts around it and leaves every other chunk, and so its hash, as it was.
+//
+//Chunks are MIN to MAX bytes. Before AVG bytes a cut needs more zero bits than after it
+//(normalized chunking), which keeps most chunks close to AVG.
+
+public class Chunker {
+    static final int MIN = 16 * 1024;
+    static final int AVG = 64 * 1024;
+    static final int MAX = 256 * 1024;
+    private static final long MASK_SMALL = 0xFFFFC00000000000L; //18 bits, before AVG
+    private static final long MASK_LARGE = 0xFFFC000000000000L; //14 bits, after it
+    private static final long[] GEAR = new long[256];
+
+    static {
+        //fixed seed: the same bytes have to be cut in the same places in every repository
+        Random random = new Random(0x6769746C6574L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private InputStream in;
+    private byte[] buffer = new byte[MAX];
+    private int filled;
+    private boolean done;
+
+    public Chunker(InputStream in) {
+        this.in = in;
+    }
+
+    //the next chunk, or null at the end of the stream
+    public byte[] next() throws IOException {
+        while (filled < MAX && !done) {
+            int read = in.read(buffer, filled, MAX - filled);
+            if (read < 0) {
+                done = true;
+            } else {
+                filled += read;
+            }
+        }
+        if (filled == 0) {
+            return null;
+        }
+        int cut = cut(buffer, filled);
+        byte[] chunk = Arrays.copyOf(buffer, cut);
+        System.arraycopy(buffer, cut, buffer, 0, filled - cut);
+        filled -= cut;
+        return chunk;
+    }
+
+    //the length of the chunk at the start of data
+    private static int cut(byte[] data, int length) {
+        if (length <= MIN) {
+            return length;
+        }
+        long hash = 0;
+        int i = MIN;
+        for (int normal = Math.min(AVG, length); i < normal; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < length; i++) {
+            hash = (hash << 1) + GEAR[data[i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,54 @@
+import java.sql.Timestamp;
+
+
+//Metadata for one commit. The parent is stored explicitly so history can be walked
+//without the commit directories being nested inside each other.
+//The files are a Tree, which is only read from the object store when it is used.
+
+public class Commit {
+    public static final int NO_PARENT = -1;
+
+    private Integer id;
+    private Integer parent;
+    private long timestamp;
+    private String message;
+    private Tree tree;
+
+    public Commit(Integer id, Integer parent, long timestamp, String message, Tree tree) {
+        this.id = id;
+        this.parent = parent;
+        this.timestamp = timestamp;
+        this.message = message;
+        this.tree = tree;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public Integer getParent() {
+        return parent;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public Tree getTree() {
+        return tree;
+    }
+
+    //merge changes the files of the commit it merges into
+    public void setTree(Tree tree) {
+        this.tree = tree;
+    }
+
+    //the three lines log and global-log print for a commit
+    public String toLog() {
+        return "Commit " + id + ".\n" + new Timestamp(timestamp) + "\n" + message;
+    }
+}
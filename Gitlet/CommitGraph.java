@@ -0,0 +1,170 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+//The parent, generation number and timestamp of every commit in .gitlet/commit-graph,
+//one fixed-width record per commit id. The file is mapped into memory, so walking history
+//neither reads commit records nor parses anything. A commit's generation is one more than
+//its parent's, and the initial commit's is 1, so the commit with the higher generation
+//can never be an ancestor of the other.
+//
+//Each commit also has a jump: an ancestor further back, chosen from the generations alone
+//(the skew binary scheme) so that any ancestor is reached in O(log n) jumps and commits of
+//the same generation jump to the same generation. commonAncestor first brings the deeper
+//side up to the other's generation and then jumps both sides while that keeps them apart,
+//so branches tens of thousands of commits apart take a few dozen steps and no recursion.
+//
+//A header, then per commit its parent id (-1 for none), jump id, generation and timestamp
+//as 4, 4, 4 and 8 byte big-endian numbers. Parents never change, so records are only
+//appended, through the Journal that saves the commits.
+
+public class CommitGraph {
+    private static final byte[] MAGIC = {'G', 'L', 'C', 'G'};
+    private static final int VERSION = 1;
+    private static final int HEADER = MAGIC.length + 1;
+    private static final int RECORD = 20;
+
+    private File file;
+    private ByteBuffer map; //null until loaded, empty if there is no file yet
+    private int stored; //records in the file
+    private ArrayList<Integer> newParents = new ArrayList<Integer>();
+    private ArrayList<Integer> newJumps = new ArrayList<Integer>();
+    private ArrayList<Integer> newGenerations = new ArrayList<Integer>();
+    private ArrayList<Long> newTimestamps = new ArrayList<Long>();
+
+    public CommitGraph(File file) {
+        this.file = file;
+    }
+
+    //commits 0 to size() - 1 are in the graph
+    public int size() throws IOException {
+        load();
+        return stored + newParents.size();
+    }
+
+    public int parent(int id) throws IOException {
+        load();
+        return id < stored ? map.getInt(HEADER + id * RECORD) : newParents.get(id - stored);
+    }
+
+    public int generation(int id) throws IOException {
+        load();
+        return id < stored ? map.getInt(HEADER + id * RECORD + 8)
+                           : newGenerations.get(id - stored);
+    }
+
+    public long timestamp(int id) throws IOException {
+        load();
+        return id < stored ? map.getLong(HEADER + id * RECORD + 12)
+                           : newTimestamps.get(id - stored);
+    }
+
+    private int jump(int id) throws IOException {
+        load();
+        return id < stored ? map.getInt(HEADER + id * RECORD + 4) : newJumps.get(id - stored);
+    }
+
+    //commits have to be added in order of their ids, which is also the order they were made
+    public void add(Commit c) throws IOException {
+        if (c.getId() != size()) {
+            throw new IllegalArgumentException("commit " + c.getId() + " added out of order");
+        }
+        int parent = c.getParent();
+        int jump = c.getId(); //the initial commit jumps to itself
+        if (parent != Commit.NO_PARENT) {
+            int j = jump(parent);
+            int jj = jump(j);
+            boolean equalSpans = generation(parent) - generation(j) == generation(j) - generation(jj);
+            jump = equalSpans ? jj : parent;
+        }
+        newParents.add(parent);
+        newJumps.add(jump);
+        newGenerations.add(parent == Commit.NO_PARENT ? 1 : generation(parent) + 1);
+        newTimestamps.add(c.getTimestamp());
+    }
+
+    //the most recent commit both a and b descend from, or NO_PARENT if there is none
+    public int commonAncestor(int a, int b) throws IOException {
+        //the deeper one cannot be an ancestor of the other, so it goes back first
+        a = ancestorAt(a, generation(b));
+        b = ancestorAt(b, generation(a));
+        while (a != b) {
+            if (parent(a) == Commit.NO_PARENT) {
+                return Commit.NO_PARENT; //separate histories
+            } else if (jump(a) != jump(b)) {
+                a = jump(a); //still apart there, so they meet further back
+                b = jump(b);
+            } else {
+                a = parent(a);
+                b = parent(b);
+            }
+        }
+        return a;
+    }
+
+    //the ancestor of id with the given generation, or id if it is not that deep
+    private int ancestorAt(int id, int generation) throws IOException {
+        while (generation(id) > generation) {
+            id = generation(jump(id)) >= generation ? jump(id) : parent(id);
+        }
+        return id;
+    }
+
+    //appends the new commits' records once journal commits
+    public void save(Journal journal) throws IOException {
+        if (newParents.isEmpty()) {
+            return;
+        }
+        ByteBuffer records = ByteBuffer.allocate((stored == 0 ? HEADER : 0)
+                                                 + newParents.size() * RECORD);
+        if (stored == 0) {
+            records.put(MAGIC);
+            records.put((byte) VERSION);
+        }
+        for (int i = 0; i < newParents.size(); i++) {
+            records.putInt(newParents.get(i));
+            records.putInt(newJumps.get(i));
+            records.putInt(newGenerations.get(i));
+            records.putLong(newTimestamps.get(i));
+        }
+        //anything past the records we know of, like a record of a save that never
+        //committed, is overwritten
+        journal.writeAndTruncate(file, stored == 0 ? 0 : HEADER + (long) stored * RECORD,
+                                 records.array());
+        newParents.clear();
+        newJumps.clear();
+        newGenerations.clear();
+        newTimestamps.clear();
+        map = null; //mapped again once the journal has written the records
+    }
+
+    private void load() throws IOException {
+        if (map != null) {
+            return;
+        }
+        stored = 0;
+        map = ByteBuffer.allocate(0);
+        if (!file.exists()) {
+            return;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (in.size() < HEADER) {
+                return;
+            }
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            byte[] magic = new byte[MAGIC.length];
+            mapped.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || mapped.get() != VERSION) {
+                return; //not a graph we can read, it gets rebuilt from the commits
+            }
+            map = mapped;
+            stored = (int) ((in.size() - HEADER) / RECORD);
+        }
+    }
+}
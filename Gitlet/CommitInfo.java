@@ -0,0 +1,41 @@
+import java.sql.Timestamp;
+
+
+//A commit as programs using Repository see it: what log prints for it and nothing that
+//would let them change it. Its files stay in the repository.
+
+public class CommitInfo {
+    private int id;
+    private int parent;
+    private long timestamp;
+    private String message;
+
+    CommitInfo(Commit c) {
+        id = c.getId();
+        parent = c.getParent();
+        timestamp = c.getTimestamp();
+        message = c.getMessage();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    //Commit.NO_PARENT for the initial commit
+    public int getParent() {
+        return parent;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "Commit " + id + ".\n" + new Timestamp(timestamp) + "\n" + message;
+    }
+}
@@ -0,0 +1,284 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+
+
+//Keeps the metadata of every commit in one append-only file, commit-log, and the offset
+//of each commit's latest record in commit-log.idx, 8 bytes per id. Both are mapped into
+//memory, so reading a commit is an index lookup and a copy out of the mapped log, and
+//going through all of them (global-log, find) opens two files however long the history.
+//A buffer maps at most 2 GB, so the log is mapped in 1 GB segments, and a record may
+//start in one and end in the next.
+//A merge that changes a commit's files appends a new record and points the index at it.
+//
+//The log is a header and then records, each a 4 byte length and then varint id, varint
+//parent + 1, varint timestamp, message and the 20 byte hash of the commit's root Tree in
+//the object store. The index is a header and then the offsets, 8 byte big-endian.
+//
+//Writes go through a Journal, so a crash never leaves the index pointing at a record that
+//was not written.
+//
+//gc removes a commit by clearing its index entry, through a Journal too. Its record stays
+//in the log, a few dozen bytes, so nothing already written is ever moved.
+//
+//Repositories that kept one file per commit in commits/<xx>/<id> are moved into the log
+//the first time it is opened.
+
+public class CommitStore {
+    private static final byte[] LOG_MAGIC = {'G', 'L', 'C', 'L'};
+    private static final byte[] INDEX_MAGIC = {'G', 'L', 'C', 'I'};
+    private static final byte[] RECORD_MAGIC = {'G', 'L', 'C', 'M'}; //the old per commit files
+    private static final int VERSION = 1;
+    private static final int RECORD_VERSION = 2;
+    private static final int HEADER = 5;
+    private static final int SEGMENT = 1 << 30;
+
+    private File logFile;
+    private File indexFile;
+    private File oldDir;
+    private ObjectStore objects;
+    private ByteBuffer[] log; //null until loaded
+    private long logSize;
+    private ByteBuffer index;
+    private int segment = SEGMENT;
+
+    //gitletDir is the .gitlet directory the log and its index go in
+    public CommitStore(File gitletDir, ObjectStore objects) {
+        this.logFile = new File(gitletDir, "commit-log");
+        this.indexFile = new File(gitletDir, "commit-log.idx");
+        this.oldDir = new File(gitletDir, "commits");
+        this.objects = objects;
+    }
+
+    public void write(Commit c, Journal journal) throws IOException {
+        ArrayList<Commit> one = new ArrayList<Commit>();
+        one.add(c);
+        write(one, journal);
+    }
+
+    //appends a record for each commit, then points the index at them, once journal commits
+    public void write(Collection<Commit> changed, Journal journal) throws IOException {
+        if (changed.isEmpty()) {
+            return;
+        }
+        load();
+        ArrayList<Commit> sorted = new ArrayList<Commit>(changed);
+        sorted.sort(Comparator.comparing(Commit::getId));
+
+        long end = Math.max(HEADER, logFile.length());
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        if (end == HEADER) {
+            end = 0;
+            out.write(LOG_MAGIC);
+            out.writeByte(VERSION);
+        }
+        long[] offsets = new long[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            Commit c = sorted.get(i);
+            //the tree's new nodes must be stored before any record points at them
+            String root = c.getTree().save();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            DataOutputStream record = new DataOutputStream(body);
+            Varint.write(record, c.getId());
+            Varint.write(record, c.getParent() + 1);
+            Varint.write(record, c.getTimestamp());
+            Varint.writeString(record, c.getMessage());
+            record.write(ObjectStore.toBytes(root));
+            offsets[i] = end + records.size();
+            out.writeInt(body.size());
+            body.writeTo(out);
+        }
+        journal.write(logFile, end, records.toByteArray());
+        Trace.commitsWritten(sorted.size());
+
+        //records first, so the index never points past the end of the log. Only the
+        //entries from the first changed id on are written, normally just the new ones
+        int count = size();
+        int first = Math.min(count, sorted.get(0).getId());
+        int newCount = Math.max(count, sorted.get(sorted.size() - 1).getId() + 1);
+        ByteBuffer entries = ByteBuffer.allocate((count == 0 ? HEADER : 0) 
+                                                 + 8 * (newCount - first));
+        if (count == 0) {
+            entries.put(INDEX_MAGIC);
+            entries.put((byte) VERSION);
+        }
+        int start = entries.position();
+        for (int id = first; id < newCount; id++) {
+            entries.putLong(id < count ? index.getLong(HEADER + 8 * id) : -1);
+        }
+        for (int i = 0; i < sorted.size(); i++) {
+            entries.putLong(start + 8 * (sorted.get(i).getId() - first), offsets[i]);
+        }
+        journal.write(indexFile, count == 0 ? 0 : HEADER + 8 * first, entries.array());
+        log = null;
+        index = null;
+    }
+
+    //forgets the commits, as if they had never been written, once journal commits
+    public void remove(Collection<Integer> ids, Journal journal) throws IOException {
+        load();
+        for (Integer id: ids) {
+            if (contains(id)) {
+                byte[] cleared = ByteBuffer.allocate(8).putLong(-1).array();
+                journal.write(indexFile, HEADER + 8 * id, cleared);
+            }
+        }
+        log = null;
+        index = null;
+    }
+
+    //the tree comes back unread, so log and find never touch the object store
+    public Commit read(Integer id) throws IOException {
+        load();
+        if (!contains(id)) {
+            throw new IOException("no commit " + id);
+        }
+        long offset = index.getLong(HEADER + 8 * id);
+        byte[] length = new byte[4];
+        get(offset, length);
+        byte[] body = new byte[ByteBuffer.wrap(length).getInt()];
+        get(offset + 4, body);
+        Trace.commitRead();
+        return readRecord(new DataInputStream(new ByteArrayInputStream(body)));
+    }
+
+    public boolean contains(Integer id) {
+        try {
+            load();
+        } catch (IOException e) {
+            return false;
+        }
+        if (id < 0 || id >= size()) {
+            return false;
+        }
+        long offset = index.getLong(HEADER + 8 * id);
+        return offset >= HEADER && offset + 4 <= logSize;
+    }
+
+    //copies the log from position into bytes, across segments
+    private void get(long position, byte[] bytes) throws IOException {
+        if (position + bytes.length > logSize) {
+            throw new IOException("commit-log is cut short");
+        }
+        int done = 0;
+        while (done < bytes.length) {
+            ByteBuffer in = log[(int) (position / segment)];
+            int at = (int) (position % segment);
+            int n = Math.min(bytes.length - done, in.limit() - at);
+            in.get(at, bytes, done, n);
+            done += n;
+            position += n;
+        }
+    }
+
+    //smaller segments, so a test can cross them without writing gigabytes
+    void setSegmentSize(int segment) {
+        this.segment = segment;
+        log = null;
+        index = null;
+    }
+
+    //ids below this have had a record written
+    private int size() {
+        return (index.limit() - HEADER) / 8;
+    }
+
+    private Commit readRecord(DataInputStream in) throws IOException {
+        Integer commitID = Varint.readInt(in);
+        Integer parent = Varint.readInt(in) - 1;
+        long timestamp = Varint.read(in);
+        String message = Varint.readString(in);
+        byte[] root = new byte[20];
+        in.readFully(root);
+        return new Commit(commitID, parent, timestamp, message, 
+                          Tree.load(objects, ObjectStore.toHex(root)));
+    }
+
+    private void load() throws IOException {
+        if (log != null) {
+            return;
+        }
+        log = mapSegments(logFile);
+        index = map(indexFile, INDEX_MAGIC);
+        if (oldDir.isDirectory()) {
+            moveOldRecords();
+        }
+    }
+
+    private void moveOldRecords() throws IOException {
+        ArrayList<Commit> old = new ArrayList<Commit>();
+        for (File shard: oldDir.listFiles()) {
+            for (File record: shard.listFiles()) {
+                if (!record.getName().endsWith(".tmp")) {
+                    old.add(readOldRecord(record));
+                }
+            }
+        }
+        Journal journal = new Journal(logFile.getParentFile());
+        write(old, journal);
+        journal.commit();
+        FileUtil.recursiveDelete(oldDir);
+        load();
+    }
+
+    private Commit readOldRecord(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)))) {
+            Serialize.readHeader(in, RECORD_MAGIC, RECORD_VERSION);
+            return readRecord(in);
+        }
+    }
+
+    //the log mapped read only a segment at a time, each buffer but the last segment long
+    private ByteBuffer[] mapSegments(File file) throws IOException {
+        if (!file.exists()) {
+            logSize = HEADER;
+            return new ByteBuffer[] {ByteBuffer.allocate(HEADER)};
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            logSize = in.size();
+            int segments = (int) Math.max(1, (logSize + segment - 1) / segment);
+            ByteBuffer[] mapped = new ByteBuffer[segments];
+            for (int i = 0; i < mapped.length; i++) {
+                long start = (long) i * segment;
+                mapped[i] = in.map(FileChannel.MapMode.READ_ONLY, start,
+                                   Math.min(segment, logSize - start));
+            }
+            byte[] header = new byte[(int) Math.min(HEADER, logSize)];
+            mapped[0].get(0, header);
+            Serialize.readHeader(new DataInputStream(new ByteArrayInputStream(header)), 
+                                 LOG_MAGIC, VERSION);
+            return mapped;
+        }
+    }
+
+    //the whole file mapped read only, or an empty buffer if it does not exist yet
+    private static ByteBuffer map(File file, byte[] magic) throws IOException {
+        if (!file.exists()) {
+            return ByteBuffer.allocate(HEADER);
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (in.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to map");
+            }
+            ByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            byte[] header = new byte[(int) Math.min(HEADER, in.size())];
+            mapped.get(0, header);
+            Serialize.readHeader(new DataInputStream(new ByteArrayInputStream(header)), 
+                                 magic, VERSION);
+            return mapped;
+        }
+    }
+}
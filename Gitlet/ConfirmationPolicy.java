@@ -0,0 +1,90 @@
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Scanner;
+
+
+//Answers the questions a command asks before it goes on: whether it may overwrite files in
+//the working directory (checkout, reset, merge, rebase) and, in an interactive rebase, what
+//to do with each commit it replays. CONSOLE asks whoever is at System.in, as gitlet always
+//has. YES is for when nobody is there (batch files, programs using Repository): every
+//warning is a yes and every commit is replayed as it is.
+
+public interface ConfirmationPolicy {
+    ConfirmationPolicy CONSOLE = new Console();
+    ConfirmationPolicy YES = new Yes();
+
+    enum Replay { CONTINUE, SKIP, MESSAGE }
+
+    //true to go on with the command warning is about
+    boolean confirm(String warning);
+
+    //what an interactive rebase does with commit. The first and last commit of a branch
+    //cannot be skipped (canSkip is false), SKIP for them replays them anyway
+    Replay replay(Commit commit, boolean canSkip);
+
+    //the message commit gets instead of its own, after replay returned MESSAGE
+    String message(Commit commit);
+
+    class Console implements ConfirmationPolicy {
+        public boolean confirm(String warning) {
+            System.out.println(warning);
+            return "yes".equals(readLine());
+        }
+
+        public Replay replay(Commit commit, boolean canSkip) {
+            System.out.println("Currently replaying:");
+            System.out.println("====");
+            System.out.println(commit.toLog());
+            System.out.println();
+            HashSet<String> validInputs = new HashSet<String>(Arrays.asList("c", "s", "m"));
+            String response = askForInput(validInputs);
+            if (response.equals("s") && !canSkip) {
+                System.out.println("You cannot skip the initial or final commit of a branch.");
+                validInputs.remove("s");
+                response = askForInput(validInputs);
+            }
+            switch (response) {
+                case "s":
+                    return Replay.SKIP;
+                case "m":
+                    return Replay.MESSAGE;
+                default:
+                    return Replay.CONTINUE;
+            }
+        }
+
+        public String message(Commit commit) {
+            System.out.println("Please enter a new message for this commit.");
+            return readLine();
+        }
+
+        private String askForInput(HashSet<String> validInputs) {
+            String input = "default";
+            while (!validInputs.contains(input)) {
+                System.out.println("Would you like to (c)ontinue, (s)kip this commit, or change this commit's (m)essage?");
+                input = readLine();
+            }
+            return input;
+        }
+
+        //System.in as it is now, which the daemon routes to the client running the command
+        private String readLine() {
+            Scanner in = new Scanner(System.in);
+            return in.nextLine();
+        }
+    }
+
+    class Yes implements ConfirmationPolicy {
+        public boolean confirm(String warning) {
+            return true;
+        }
+
+        public Replay replay(Commit commit, boolean canSkip) {
+            return Replay.CONTINUE;
+        }
+
+        public String message(Commit commit) {
+            return commit.getMessage();
+        }
+    }
+}
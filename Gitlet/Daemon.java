@@ -0,0 +1,273 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+
+//`gitlet daemon` loads the repository once and then runs commands sent to the Unix domain
+//socket .gitlet/daemon.sock, saving after each one just like a normal run. Loaded commits,
+//trees and the stat cache stay in memory between commands. While the socket exists every
+//other gitlet run forwards its arguments there instead of loading the repository itself.
+//`gitlet daemon stop` shuts the daemon down.
+//
+//A request is the number of arguments and then each argument, every one followed by a 0
+//byte. Whatever the client sends after that is the command's standard input (the yes/no
+//prompts), and everything the command prints is sent back until the daemon hangs up.
+
+public class Daemon {
+    private static final Path SOCKET = Paths.get(".gitlet/daemon.sock");
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    //where System.out and System.in go for the thread running a client's command
+    private static final ThreadLocal<PrintStream> CLIENT_OUT = new ThreadLocal<PrintStream>();
+    private static final ThreadLocal<InputStream> CLIENT_IN = new ThreadLocal<InputStream>();
+
+    public static void serve() throws IOException {
+        Git g;
+        RepoLock loading = RepoLock.acquire(Gitlet.CURRENT, true);
+        try {
+            g = Serialize.load(Gitlet.CURRENT);
+        } finally {
+            loading.close();
+        }
+        if (g == null) {
+            System.out.println("You must initialize first");
+            return;
+        }
+        if (isRunning()) {
+            System.out.println("A gitlet daemon is already running.");
+            return;
+        }
+        Files.deleteIfExists(SOCKET); //left behind by a daemon that was killed
+        PrintStream originalOut = System.out;
+        InputStream originalIn = System.in;
+        System.setOut(new PrintStream(new RoutedOutput(originalOut), true));
+        System.setIn(new RoutedInput(originalIn));
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET));
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    InputStream in = new BufferedInputStream(Channels.newInputStream(client));
+                    PrintStream out = new PrintStream(Channels.newOutputStream(client), false);
+                    CLIENT_OUT.set(out);
+                    CLIENT_IN.set(in);
+                    try {
+                        String[] args = readRequest(in);
+                        if (args.length == 0) {
+                            continue; //someone checking whether we are running
+                        } else if (args.length == 2 && args[0].equals("daemon")
+                                   && args[1].equals("stop")) {
+                            running = false;
+                        } else {
+                            args = Trace.configure(args);
+                            Trace.start(args[0]);
+                            Throwable failure = null;
+                            try (RepoLock lock = RepoLock.acquire(Gitlet.CURRENT, args[0])) {
+                                if (Serialize.isStale(g)) {
+                                    //saved by a run that did not come here
+                                    g = Serialize.load(Gitlet.CURRENT);
+                                }
+                                long executing = Trace.begin();
+                                g = Gitlet.execute(g, args);
+                                Trace.end("execute", executing);
+                                if (lock.isShared()) {
+                                    Serialize.saveCaches(g);
+                                } else {
+                                    Serialize.serializeGit(g);
+                                }
+                            } catch (Exception e) {
+                                failure = e;
+                                throw e;
+                            } finally {
+                                Trace.finish(failure);
+                            }
+                        }
+                    } catch (Exception e) {
+                        System.out.println(e);
+                    } finally {
+                        out.flush();
+                        CLIENT_OUT.remove();
+                        CLIENT_IN.remove();
+                    }
+                    //hang up only after the client has seen all output and closed its end,
+                    //since closing with unread input would reset the connection
+                    client.shutdownOutput();
+                    while (in.skip(BUFFER_SIZE) > 0 || in.read() != -1) {
+                        continue;
+                    }
+                } catch (IOException e) {
+                    continue; //the client went away, the next one may not
+                }
+            }
+        } finally {
+            Files.deleteIfExists(SOCKET);
+            System.setOut(originalOut);
+            System.setIn(originalIn);
+        }
+    }
+
+    //sends args to a running daemon and prints its answer. False if there is no daemon,
+    //in which case the caller runs the command itself
+    public static boolean forward(String[] args) throws IOException {
+        if (!Files.exists(SOCKET)) {
+            return false;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET));
+        } catch (IOException e) {
+            return false; //stale socket of a daemon that was killed
+        }
+        try (SocketChannel daemon = channel) {
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            writeArg(request, Integer.toString(args.length));
+            for (String arg: args) {
+                writeArg(request, arg);
+            }
+            writeFully(daemon, request.toByteArray(), request.size());
+
+            //a socket channel reads and writes independently, unlike streams from Channels,
+            //so standard input can be passed on while we wait for output
+            Thread input = new Thread(() -> passInput(daemon));
+            input.setDaemon(true);
+            input.start();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            while (daemon.read(buffer) != -1) {
+                System.out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+            System.out.flush();
+        }
+        return true;
+    }
+
+    private static boolean isRunning() {
+        if (!Files.exists(SOCKET)) {
+            return false;
+        }
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET))) {
+            writeFully(channel, new byte[] {'0', 0}, 2); //an empty request, which it ignores
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void passInput(SocketChannel daemon) {
+        byte[] bytes = new byte[BUFFER_SIZE];
+        try {
+            int read;
+            while ((read = System.in.read(bytes)) != -1) {
+                writeFully(daemon, bytes, read);
+            }
+            daemon.shutdownOutput(); //so the command sees the end of its input
+        } catch (IOException e) {
+            return; //the command finished before reading everything
+        }
+    }
+
+    private static String[] readRequest(InputStream in) throws IOException {
+        int count = Integer.parseInt(readArg(in));
+        String[] args = new String[count];
+        for (int i = 0; i < count; i++) {
+            args[i] = readArg(in);
+        }
+        return args;
+    }
+
+    private static String readArg(InputStream in) throws IOException {
+        ByteArrayOutputStream arg = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != 0) {
+            if (b == -1) {
+                throw new IOException("incomplete request");
+            }
+            arg.write(b);
+        }
+        return new String(arg.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void writeArg(ByteArrayOutputStream out, String arg) {
+        byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+        out.write(bytes, 0, bytes.length);
+        out.write(0);
+    }
+
+    private static void writeFully(SocketChannel channel, byte[] bytes, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    //System.out as seen by Git: the client's connection while a command runs on this thread
+    private static class RoutedOutput extends OutputStream {
+        private PrintStream original;
+
+        RoutedOutput(PrintStream original) {
+            this.original = original;
+        }
+
+        private PrintStream target() {
+            PrintStream client = CLIENT_OUT.get();
+            return client == null ? original : client;
+        }
+
+        @Override
+        public void write(int b) {
+            target().write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) {
+            target().write(bytes, off, len);
+        }
+
+        @Override
+        public void flush() {
+            target().flush();
+        }
+    }
+
+    private static class RoutedInput extends InputStream {
+        private InputStream original;
+
+        RoutedInput(InputStream original) {
+            this.original = original;
+        }
+
+        private InputStream source() {
+            InputStream client = CLIENT_IN.get();
+            return client == null ? original : client;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return source().read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) throws IOException {
+            return source().read(bytes, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return source().available();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+
+//Binary deltas between two versions of an object, for pack files. A delta is the size of
+//the base and of the result, then instructions that either copy a run of bytes out of
+//the base or insert bytes the base does not have:
+//  0, varint length, the bytes          insert
+//  1, varint offset, varint length      copy from the base
+//
+//Matches are found by indexing every 16 byte block of the base and sliding a rolling
+//hash over the target, so a file that grew by a line is one copy and one insert.
+
+public class Delta {
+    private static final int BLOCK = 16;
+    private static final int INSERT = 0;
+    private static final int COPY = 1;
+    private static final int PRIME = 31;
+
+    public static byte[] create(byte[] base, byte[] target) throws IOException {
+        HashMap<Integer, Integer> blocks = new HashMap<Integer, Integer>(); //hash --> offset
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hash(base, i), i);
+        }
+        int power = 1; //PRIME to the BLOCK - 1, to take the oldest byte out of the hash
+        for (int i = 1; i < BLOCK; i++) {
+            power *= PRIME;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Varint.write(out, base.length);
+        Varint.write(out, target.length);
+        int pending = 0; //start of the bytes not yet copied or inserted
+        int pos = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (pos + BLOCK <= target.length) {
+            Integer at = blocks.get(h);
+            if (at != null && same(base, at, target, pos, BLOCK)) {
+                int from = at;
+                int start = pos;
+                int end = pos + BLOCK;
+                while (end < target.length && from + (end - start) < base.length
+                       && target[end] == base[from + (end - start)]) {
+                    end++;
+                }
+                while (start > pending && from > 0 && target[start - 1] == base[from - 1]) {
+                    start--;
+                    from--;
+                }
+                insert(out, target, pending, start);
+                out.writeByte(COPY);
+                Varint.write(out, from);
+                Varint.write(out, end - start);
+                pos = end;
+                pending = end;
+                if (pos + BLOCK <= target.length) {
+                    h = hash(target, pos);
+                }
+            } else {
+                if (pos + BLOCK < target.length) {
+                    h = (h - (target[pos] & 0xff) * power) * PRIME + (target[pos + BLOCK] & 0xff);
+                }
+                pos++;
+            }
+        }
+        insert(out, target, pending, target.length);
+        return bytes.toByteArray();
+    }
+
+    public static byte[] apply(byte[] base, byte[] delta) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta));
+        if (Varint.read(in) != base.length) {
+            throw new IOException("delta does not belong to this base");
+        }
+        byte[] result = new byte[Varint.readInt(in)];
+        int pos = 0;
+        while (in.available() > 0) {
+            int op = in.readUnsignedByte();
+            if (op == INSERT) {
+                int length = Varint.readInt(in);
+                in.readFully(result, pos, length);
+                pos += length;
+            } else {
+                int from = Varint.readInt(in);
+                int length = Varint.readInt(in);
+                System.arraycopy(base, from, result, pos, length);
+                pos += length;
+            }
+        }
+        if (pos != result.length) {
+            throw new IOException("corrupt delta");
+        }
+        return result;
+    }
+
+    private static void insert(DataOutputStream out, byte[] target, int start, int end)
+            throws IOException {
+        if (start < end) {
+            out.writeByte(INSERT);
+            Varint.write(out, end - start);
+            out.write(target, start, end - start);
+        }
+    }
+
+    private static int hash(byte[] data, int start) {
+        int h = 0;
+        for (int i = start; i < start + BLOCK; i++) {
+            h = h * PRIME + (data[i] & 0xff);
+        }
+        return h;
+    }
+
+    private static boolean same(byte[] a, int aStart, byte[] b, int bStart, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aStart + i] != b[bStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+
+//Line diffs with Myers' O(ND) algorithm in its linear space form: find the middle snake
+//of the shortest edit script from both ends at once, then recurse on either side of it.
+//Lines are numbered first so the comparisons are between ints, and lines the two sides
+//start or end with in common are never searched.
+
+public class Diff {
+    //lines aStart to aEnd of a were replaced by lines bStart to bEnd of b (ends exclusive),
+    //one of the two ranges may be empty
+    public static class Hunk {
+        private int aStart;
+        private int aEnd;
+        private int bStart;
+        private int bEnd;
+
+        Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+
+        public int getAStart() {
+            return aStart;
+        }
+
+        public int getAEnd() {
+            return aEnd;
+        }
+
+        public int getBStart() {
+            return bStart;
+        }
+
+        public int getBEnd() {
+            return bEnd;
+        }
+    }
+
+    //text split after every \n, which each line keeps, so joining them gives text back
+    public static ArrayList<String> lines(String text) {
+        ArrayList<String> lines = new ArrayList<String>();
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines.add(text.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < text.length()) {
+            lines.add(text.substring(start));
+        }
+        return lines;
+    }
+
+    //the regions where a and b differ, in order
+    public static ArrayList<Hunk> diff(List<String> a, List<String> b) {
+        HashMap<String, Integer> numbers = new HashMap<String, Integer>();
+        int[] x = number(a, numbers);
+        int[] y = number(b, numbers);
+        boolean[] removed = new boolean[x.length];
+        boolean[] added = new boolean[y.length];
+        int size = 2 * ((x.length + y.length + 1) / 2) + 3;
+        compare(x, 0, x.length, y, 0, y.length, removed, added, new int[size], new int[size]);
+
+        //lines neither removed nor added match up in order
+        ArrayList<Hunk> hunks = new ArrayList<Hunk>();
+        int i = 0;
+        int j = 0;
+        while (i < x.length || j < y.length) {
+            if (i < x.length && j < y.length && !removed[i] && !added[j]) {
+                i++;
+                j++;
+                continue;
+            }
+            int aStart = i;
+            int bStart = j;
+            while (i < x.length && removed[i]) {
+                i++;
+            }
+            while (j < y.length && added[j]) {
+                j++;
+            }
+            hunks.add(new Hunk(aStart, i, bStart, j));
+        }
+        return hunks;
+    }
+
+    //writes the hunks of a and b's diff the way diff -u and git do, each with up to context
+    //unchanged lines around it. Hunks close together share their context
+    public static void unified(PrintStream out, List<String> a, List<String> b, int context) {
+        ArrayList<Hunk> hunks = diff(a, b);
+        int first = 0;
+        while (first < hunks.size()) {
+            int last = first;
+            while (last + 1 < hunks.size()
+                   && hunks.get(last + 1).aStart - hunks.get(last).aEnd <= 2 * context) {
+                last++;
+            }
+            Hunk h = hunks.get(first);
+            int aStart = Math.max(0, h.aStart - context);
+            int bStart = h.bStart - (h.aStart - aStart);
+            int aEnd = Math.min(a.size(), hunks.get(last).aEnd + context);
+            int bEnd = hunks.get(last).bEnd + (aEnd - hunks.get(last).aEnd);
+            out.println("@@ -" + range(aStart, aEnd) + " +" + range(bStart, bEnd) + " @@");
+            int done = aStart;
+            for (int i = first; i <= last; i++) {
+                h = hunks.get(i);
+                print(out, ' ', a, done, h.aStart);
+                print(out, '-', a, h.aStart, h.aEnd);
+                print(out, '+', b, h.bStart, h.bEnd);
+                done = h.aEnd;
+            }
+            print(out, ' ', a, done, aEnd);
+            first = last + 1;
+        }
+    }
+
+    //start,count numbered from 1, or the line before the range when it is empty
+    private static String range(int start, int end) {
+        if (end - start == 1) {
+            return String.valueOf(start + 1);
+        }
+        return (end == start ? start : start + 1) + "," + (end - start);
+    }
+
+    private static void print(PrintStream out, char prefix, List<String> lines, int from, 
+                              int to) {
+        for (int i = from; i < to; i++) {
+            String line = lines.get(i);
+            out.print(prefix);
+            out.print(line);
+            if (!line.endsWith("\n")) {
+                out.print("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    private static int[] number(List<String> lines, HashMap<String, Integer> numbers) {
+        int[] numbered = new int[lines.size()];
+        for (int i = 0; i < numbered.length; i++) {
+            Integer n = numbers.putIfAbsent(lines.get(i), numbers.size());
+            numbered[i] = n == null ? numbers.size() - 1 : n;
+        }
+        return numbered;
+    }
+
+    //marks what differs between a[aLo, aHi) and b[bLo, bHi), reusing forward and backward
+    private static void compare(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi,
+                                boolean[] removed, boolean[] added, int[] forward, int[] backward) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi--;
+            bHi--;
+        }
+        if (aLo == aHi) {
+            for (int j = bLo; j < bHi; j++) {
+                added[j] = true;
+            }
+        } else if (bLo == bHi) {
+            for (int i = aLo; i < aHi; i++) {
+                removed[i] = true;
+            }
+        } else {
+            int[] snake = middleSnake(a, aLo, aHi, b, bLo, bHi, forward, backward);
+            compare(a, aLo, snake[0], b, bLo, snake[1], removed, added, forward, backward);
+            compare(a, snake[2], aHi, b, snake[3], bHi, removed, added, forward, backward);
+        }
+    }
+
+    //the start and end, in a and b, of a run of matching lines on a shortest edit script
+    private static int[] middleSnake(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi,
+                                     int[] forward, int[] backward) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2;
+        int off = max + 1;
+        forward[off + 1] = 0;
+        backward[off + 1] = 0;
+        for (int d = 0; d <= max; d++) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && forward[off + k - 1] < forward[off + k + 1])
+                        ? forward[off + k + 1] : forward[off + k - 1] + 1;
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aLo + x] == b[bLo + y]) {
+                    x++;
+                    y++;
+                }
+                forward[off + k] = x;
+                if (odd && delta - k >= -(d - 1) && delta - k <= d - 1
+                    && x + backward[off + delta - k] >= n) {
+                    return new int[] {aLo + x0, bLo + y0, aLo + x, bLo + y};
+                }
+            }
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && backward[off + k - 1] < backward[off + k + 1])
+                        ? backward[off + k + 1] : backward[off + k - 1] + 1;
+                int y = x - k;
+                int x0 = x;
+                int y0 = y;
+                while (x < n && y < m && a[aHi - 1 - x] == b[bHi - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                backward[off + k] = x;
+                if (!odd && delta - k >= -d && delta - k <= d
+                    && x + forward[off + delta - k] >= n) {
+                    return new int[] {aHi - x, bHi - y, aHi - x0, bHi - y0};
+                }
+            }
+        }
+        throw new IllegalStateException("no middle snake"); //d reaches max on any input
+    }
+}
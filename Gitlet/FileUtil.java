@@ -1,8 +1,11 @@
 import java.io.File;
 import java.nio.file.Files;
 import java.io.IOException;
-import java.nio.file.Path;
+import java.io.InputStream;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.channels.FileChannel;
 import java.io.FileWriter;
 import java.nio.charset.StandardCharsets;
 
@@ -10,14 +13,114 @@ import java.nio.charset.StandardCharsets;
 //adopted many methods from GitletPublicTest
 
 public class FileUtil {
+    /**
+     * Copies source over target without holding the contents in memory. The kernel moves
+     * the bytes (transferTo) so they never pass through our heap. The copy is written next
+     * to target and renamed over it, so a hard link that target may have been is never
+     * written through and target is never left half written.
+     */
     public static void copyFile(File source, File target) throws IOException {
         if (!source.exists()) {
             System.out.println("invalid source");
             return;
         }
-        byte[] sourceContents = Files.readAllBytes(Paths.get(source.toString()));
-        Path endPath = Paths.get(target.toString());
-        Files.write(endPath, sourceContents);
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            copyFile(in, target);
+        }
+    }
+
+    //the same from a file that is already open, whatever position it was read to
+    public static void copyFile(FileChannel in, File target) throws IOException {
+        long copying = Trace.begin();
+        File temp = tempFileFor(target);
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE,
+                                                StandardOpenOption.CREATE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
+            Trace.opened(2);
+            Trace.read(size);
+            Trace.wrote(size);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        Trace.end("copy", copying);
+    }
+
+    /**
+     * Makes target a hard link to source, falling back to copyFile where links are not
+     * supported (another file system, FAT, ...). Only for sources that will never be
+     * changed again, like objects in the object store, since both names share the same
+     * bytes. Java has no reflink call, so copy-on-write clones are not attempted.
+     */
+    public static void linkFile(File source, File target) throws IOException {
+        long linking = Trace.begin();
+        File temp = tempFileFor(target);
+        temp.delete();
+        try {
+            Files.createLink(temp.toPath(), source.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            copyFile(source, target);
+            return;
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        Trace.end("copy", linking);
+    }
+
+    //replaces target with contents, written next to it first like copyFile
+    public static void writeBytes(File target, byte[] contents) throws IOException {
+        long copying = Trace.begin();
+        File temp = tempFileFor(target);
+        try {
+            Files.write(temp.toPath(), contents);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        Trace.opened(1);
+        Trace.wrote(contents.length);
+        Trace.end("copy", copying);
+    }
+
+    //replaces target with everything in, like writeBytes without holding it all in memory
+    public static void writeStream(File target, InputStream in) throws IOException {
+        long copying = Trace.begin();
+        File temp = tempFileFor(target);
+        try (InputStream from = in) {
+            Trace.wrote(Files.copy(from, temp.toPath(), StandardCopyOption.REPLACE_EXISTING));
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        Trace.opened(1);
+        Trace.end("copy", copying);
+    }
+
+    //dir as an absolute path without . or .., so one directory is always the same File
+    public static File absolute(File dir) {
+        return dir.getAbsoluteFile().toPath().normalize().toFile();
+    }
+
+    //where file, a path relative to the top of the working tree at root, is on disk
+    public static File resolve(File root, File file) {
+        return file.isAbsolute() ? file : new File(root, file.getPath());
+    }
+
+    //a scratch name in the same directory, so the final rename never crosses file systems
+    private static File tempFileFor(File target) {
+        File dir = target.getAbsoluteFile().getParentFile();
+        return new File(dir, "." + target.getName() + ".gitlet-tmp");
     }
 
     public static void makeRecursiveDirectory(File target, File source) { 
@@ -1,18 +1,13 @@
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.Serializable;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.HashSet;
-import java.util.Arrays;
-import java.nio.file.Files;
-import java.util.Scanner;
-
-import java.io.PrintWriter;
-import java.sql.Timestamp;
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.util.TreeMap;
 
 
 //Got printwriter from http://stackoverflow.com/questions/1053467/
@@ -27,52 +22,193 @@ import java.io.FileReader;
 //cs61b-asi Ethan Rucker taught me how to check if two files are equal
 
 
-public class Git implements Serializable {
+public class Git {
 
     //make sure to empty data structures whenever switching branches
     private HashSet<File> filesAdded;
-    private HashMap<Integer, HashMap<File, Integer>> modified; //.txt --> lastModified
-    private HashMap<String, LinkedList<File>> findCommitID; 
     private HashSet<File> fileForRemoval;
-    private HashMap<Integer, HashMap<File, File>> commitHist;
     private HashMap<String, Integer> branchToCurrentID;
-    private HashMap<String, File> branchToDir;
     private Integer commit = 0;
     private String currentBranch;
 
-    public Git() throws IOException {
-        boolean folder = new File(".gitlet").mkdir();
+    //commits are only read from disk once a command asks for them
+    private HashMap<Integer, Commit> loadedCommits = new HashMap<Integer, Commit>();
+    private HashSet<Integer> changedCommits = new HashSet<Integer>(); //written back by Serialize
+    //the top of the working tree; files are kept relative to it and only resolved against
+    //it to reach the disk, so a repository need not be in the current directory
+    private File root;
+    private File gitletDir; //root/.gitlet
+    private ObjectStore objects;
+    private CommitStore commits;
+    private StatCache statCache;
+    private CommitGraph graph;
+    private MessageIndex messages;
+    private ConfirmationPolicy policy = ConfirmationPolicy.CONSOLE; //YES for batch runs
+    private PrintStream out; //where messages go, System.out as it is at the time if null
+
+    public Git(File root) throws IOException {
+        open(root);
+        boolean folder = gitletDir.mkdir();
         currentBranch = "master";
         filesAdded = new HashSet<File>(); //stores the added files
-        modified = new HashMap<Integer, HashMap<File, Integer>>(); //stores a file's last modified
-        modified.put(commit, new HashMap<File, Integer>());
-        findCommitID = new HashMap<String, LinkedList<File>>(); //File is the current directory
         fileForRemoval = new HashSet<File>();
-        commitHist = new HashMap<Integer, HashMap<File, File>>();
-        commitHist.put(commit, new HashMap<File, File>());
         branchToCurrentID = new HashMap<String, Integer>();
         branchToCurrentID.put(currentBranch, commit);
-        branchToDir = new HashMap<String, File>();
-        branchToDir.put(currentBranch, new File(".gitlet"));
-        makeDirectory("initial commit"); 
+        messages.create();
+        makeCommit("initial commit", Commit.NO_PARENT, Tree.empty(objects)); 
+    }
+
+    //used by Serialize, everything else is read lazily from the commit store
+    Git(Integer commit, String currentBranch, HashMap<String, Integer> branchToCurrentID,
+            HashSet<File> filesAdded, HashSet<File> fileForRemoval, File root) {
+        open(root);
+        this.commit = commit;
+        this.currentBranch = currentBranch;
+        this.branchToCurrentID = branchToCurrentID;
+        this.filesAdded = filesAdded;
+        this.fileForRemoval = fileForRemoval;
+    }
+
+    private void open(File dir) {
+        root = FileUtil.absolute(dir);
+        gitletDir = new File(root, ".gitlet");
+        objects = new ObjectStore(new File(gitletDir, "objects"));
+        commits = new CommitStore(gitletDir, objects);
+        statCache = new StatCache(new File(gitletDir, "index"), root);
+        graph = new CommitGraph(new File(gitletDir, "commit-graph"));
+        messages = new MessageIndex(gitletDir, commits);
+    }
+
+    File getRoot() {
+        return root;
+    }
+
+    //where file, relative to root like every file gitlet keeps, is on disk
+    private File onDisk(File file) {
+        return FileUtil.resolve(root, file);
+    }
+
+    Integer getCommitCounter() {
+        return commit;
+    }
+
+    String getCurrentBranch() {
+        return currentBranch;
+    }
+
+    HashMap<String, Integer> getBranches() {
+        return branchToCurrentID;
+    }
+
+    HashSet<File> getFilesAdded() {
+        return filesAdded;
+    }
+
+    HashSet<File> getFilesForRemoval() {
+        return fileForRemoval;
+    }
+
+    //writes every commit created or changed by this command, nothing else is rewritten
+    //into journal, with the objects stored since the last save so they are synced with it
+    void saveChanges(Journal journal) throws IOException {
+        ArrayList<Commit> changed = new ArrayList<Commit>();
+        for (Integer id: changedCommits) {
+            changed.add(loadedCommits.get(id));
+        }
+        commits.write(changed, journal);
+        messages.append(changed, journal);
+        changedCommits.clear();
+        graph.save(journal);
+        journal.created(objects.takeWritten());
+        saveCaches();
+    }
+
+    void saveCaches() throws IOException {
+        statCache.save();
+    }
+
+    //index work that writes what find only reads, once the commits are saved
+    void foldMessages() throws IOException {
+        messages.foldIfLong(commit);
     }
 
-    public void add(String[] tokens) throws IOException {
+    //metadata of a commit, its files are not read until they are asked for
+    private Commit getCommit(Integer id) throws IOException {
+        if (!loadedCommits.containsKey(id)) {
+            loadedCommits.put(id, commits.read(id));
+        }
+        return loadedCommits.get(id);
+    }
+
+    private boolean commitExists(Integer id) {
+        return loadedCommits.containsKey(id) || commits.contains(id);
+    }
+
+    //each file's hash in objects and the id of the commit that last modified it
+    private Tree tree(Integer id) throws IOException {
+        return getCommit(id).getTree();
+    }
+
+    private Integer parent(Integer id) throws IOException {
+        if (id < graph().size()) {
+            return graph().parent(id);
+        }
+        return getCommit(id).getParent();
+    }
+
+    //the commit graph, first given any commits it is missing (all of them in an older repo)
+    private CommitGraph graph() throws IOException {
+        while (graph.size() <= commit) {
+            Integer id = graph.size();
+            if (commitExists(id)) {
+                graph.add(getCommit(id));
+            } else if (id < commit) {
+                //removed by gc: no live commit descends from it, so it is only a placeholder
+                graph.add(new Commit(id, Commit.NO_PARENT, 0, "", null));
+            } else {
+                break;
+            }
+        }
+        return graph;
+    }
+
+    public void add(String[] tokens) throws IOException, GitletException {
         if (tokens.length == 0) {
-            System.out.println("Did not enter enough arguments");
+            throw new GitletException.Usage("Did not enter enough arguments");
         } else {
             String file = tokens[0];
             File specified = new File(file);
-            if (specified.exists()) { 
+            if (onDisk(specified).isDirectory()) {
+                addDirectory(specified);
+            } else if (onDisk(specified).exists()) { 
                 if (!isModified(specified)) { 
-                    System.out.println("File has not been modified since the last commit.");
+                    out().println("File has not been modified since the last commit.");
                 } else {
                     filesAdded.add(specified);
                     fileForRemoval.remove(specified);
                 } 
             } else {
-                System.out.println("File does not exist.");
-                return;
+                throw new GitletException.NotFound("File does not exist.");
+            }
+        }
+    }
+
+    //stages every modified file under dir, unchanged ones are recognized without reading them
+    private void addDirectory(File dir) throws IOException {
+        addDirectory(dir, new IgnoreRules(new File(root, ".gitletignore")));
+    }
+
+    private void addDirectory(File dir, IgnoreRules ignore) throws IOException {
+        for (File f: onDisk(dir).listFiles()) {
+            //./a.txt is staged as a.txt
+            File file = new File(dir, f.getName()).toPath().normalize().toFile();
+            if (ignore.isIgnored(file.toPath(), f.isDirectory())) {
+                continue; //and .gitlet always is
+            } else if (f.isDirectory()) {
+                addDirectory(file, ignore);
+            } else if (isModified(file)) {
+                filesAdded.add(file);
+                fileForRemoval.remove(file);
             }
         }
     }
@@ -80,97 +216,68 @@ public class Git implements Serializable {
     //check if a file is modified with respect to the current commit
     private boolean isModified(File file) throws IOException {
         int prevCommit = branchToCurrentID.get(currentBranch);
-        if (!commitHist.get(prevCommit).containsKey(file)) {
+        if (!tree(prevCommit).contains(file)) {
             return true;
         }
-        byte[] commitedFile = Files.readAllBytes(commitHist.get(prevCommit).get(file).toPath());
-        byte[] newFile = Files.readAllBytes(file.toPath());
-        return !Arrays.equals(commitedFile, newFile);
+        //the committed side is already a hash, and the working file's usually is in the stat cache
+        return !statCache.hash(file).equals(tree(prevCommit).getHash(file));
     } 
 
-    public void commit(String[] tokens) throws IOException {
+    public void commit(String[] tokens) throws IOException, GitletException {
         if (tokens.length == 0 || tokens[0].length() == 0) {
-            System.out.println("Please enter a commit message.");
-            return;
+            throw new GitletException.Usage("Please enter a commit message.");
         }
         if (filesAdded.size() == 0 && fileForRemoval.size() == 0) {
-            System.out.println("No changes added to the commit.");
-            return;
+            throw new GitletException.Rejected("No changes added to the commit.");
         } 
         int prevCommit = branchToCurrentID.get(currentBranch);
         commit += 1;
         branchToCurrentID.put(currentBranch, commit);
-        commitHist.put(commit, new HashMap<File, File>());
 
-        //inherit old files from prev commit
-        for (File prev: commitHist.get(prevCommit).keySet()) { 
-            commitHist.get(commit).put(prev, commitHist.get(prevCommit).get(prev));
-        }
-
-        //inherit old files from prev modified
-        modified.put(commit, new HashMap<File, Integer>());
-
-        //we iterate through so that we create a duplicate not a pointer
-        for (File prev: modified.get(prevCommit).keySet()) { 
-            modified.get(commit).put(prev, modified.get(prevCommit).get(prev));
-        }
+        //inherit old files from prev commit, the tree is shared until we change it
+        Tree files = tree(prevCommit);
 
         for (File file: fileForRemoval) {
-            commitHist.get(commit).remove(file);
-            modified.get(commit).remove(file);
+            files = files.without(file);
         }
 
         fileForRemoval.clear();
-        makeDirectory(tokens[0]);
+        makeCommit(tokens[0], prevCommit, files);
         filesAdded.clear();
 
     }
-    private void makeDirectory(String inputMessage) throws IOException {
-        branchToDir.put(currentBranch, new File(branchToDir.get(currentBranch), commit.toString()));
-        File currentDir = branchToDir.get(currentBranch);
-        currentDir.mkdir();
-        
+    private void makeCommit(String inputMessage, Integer parent, Tree files) throws IOException {
         //now add new files to commitHist while replacing some old ones
         for (File file: filesAdded) {
-            FileUtil.makeRecursiveDirectory(currentDir, file); 
-
-            //the File in the .gitlet directory
-            File newPathName = new File(currentDir, file.toString()); 
-
-            //copy the file's contents from the working directory into the new one
-            FileUtil.copyFile(file, newPathName);
-
-            //add file to our data structures
-            commitHist.get(commit).put(file, newPathName);
-            modified.get(commit).put(file, commit);
-        }
-
-        //creates the commit info log
-        String pathName = currentDir.toString() + "/info.txt";
-        PrintWriter out = new PrintWriter(pathName); //Each Commit folder has an info.txt file
-        out.println("Commit " + commit + ".");
-        out.println(new Timestamp(System.currentTimeMillis()));
-        out.println(inputMessage);
-        out.close();
+            //contents go into the object store, which skips anything it already has
+            String hash = statCache.hash(file);
+            if (!objects.contains(hash)) {
+                hash = objects.write(onDisk(file));
+            }
 
-        //for find purposes
-        if (findCommitID.get(inputMessage) == null) {
-            findCommitID.put(inputMessage, new LinkedList<File>());
+            //only the directories on the way to the file are copied
+            files = files.with(file, hash, commit);
         }
+        writeCommitInfo(inputMessage, parent, files);
+    }
 
-        //add the path to the LinkedList asssociated with the message
-        findCommitID.get(inputMessage).addFirst(currentDir); 
+    //records the new commit along with a pointer to its parent, Serialize writes it out
+    private void writeCommitInfo(String inputMessage, Integer parent, Tree files) throws IOException {
+        Commit c = new Commit(commit, parent, System.currentTimeMillis(), inputMessage, files);
+        loadedCommits.put(commit, c);
+        changedCommits.add(commit);
+        graph(); //appends c
     }
 
-    public void removeFile(String[] tokens) { //or at least set it up to be removed
+    public void removeFile(String[] tokens) throws IOException, GitletException { //or at least set it up to be removed
         if (tokens.length == 0) {
-            System.out.println("Did not enter enough arguments");
+            throw new GitletException.Usage("Did not enter enough arguments");
         } else {
             String txt = tokens[0];
             File shouldRemove = new File(txt);
             if (!filesAdded.contains(shouldRemove)  
-                    && !commitHist.get(commit).containsKey(shouldRemove)) {
-                System.out.println("No reason to remove the file.");
+                    && !tree(branchToCurrentID.get(currentBranch)).contains(shouldRemove)) {
+                throw new GitletException.Rejected("No reason to remove the file.");
             } else {
                 if (filesAdded.contains(shouldRemove)) {
                     filesAdded.remove(shouldRemove);
@@ -182,455 +289,671 @@ public class Git implements Serializable {
         }
     }
 
-    public void log() {
-        File tempCurr = branchToDir.get(currentBranch);
-        while (!tempCurr.getName().equals(".gitlet")) {
-            printLog(tempCurr.toString() + "/info.txt");
-            tempCurr = tempCurr.getParentFile();
+    //log [commit id] [-n count]: count commits back from the id, by default all of them
+    //back from the head of the current branch
+    public void log(String[] tokens) throws IOException, GitletException {
+        Integer id = branchToCurrentID.get(currentBranch);
+        int count = Integer.MAX_VALUE;
+        try {
+            for (int i = 0; i < tokens.length; i++) {
+                if (tokens[i].equals("-n") && i + 1 < tokens.length) {
+                    i += 1;
+                    count = Integer.parseInt(tokens[i]);
+                } else {
+                    id = Integer.parseInt(tokens[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new GitletException.Usage("Usage: log [commit id] [-n count]");
+        }
+        if (!commitExists(id)) {
+            throw new GitletException.NotFound("No commit with that id exists.");
+        }
+        PrintStream out = pager();
+        for (; id != Commit.NO_PARENT && count > 0; id = parent(id), count--) {
+            printLog(out, peek(id));
         }
+        out.flush();
     }
 
-    public void printLog(String path) throws IOException {
-        BufferedReader readInfo = new BufferedReader(new FileReader(new File(path)));
-        System.out.println("====");
-        System.out.println(readInfo.readLine()); //commit id
-        System.out.println(readInfo.readLine()); //Time Stamp
-        System.out.println(readInfo.readLine()); //Message
-        System.out.println();  
+    //a sequential pass over the commit log, newest first
+    public void globalLog() throws IOException {
+        PrintStream out = pager();
+        for (Integer id = commit; id >= 0; id--) {
+            if (commitExists(id)) { //not removed by gc
+                printLog(out, peek(id));
+            }
+        }
+        out.flush();
     }
 
-    public void globalLog() {
-        for (LinkedList<File> list: findCommitID.values()) {
-            for (File dir: list) {
-                printLog(dir.toString() + "/info.txt");
-            }
+    private void printLog(PrintStream out, Commit c) {
+        out.println("====");
+        out.println(c.toLog()); //commit id, time stamp and message
+        out.println();
+    }
+
+    //output for long listings, written a page at a time instead of a line at a time
+    private PrintStream pager() {
+        return new PrintStream(new BufferedOutputStream(out(), 64 * 1024), false);
+    }
+
+    //the head of the current branch and up to count - 1 commits before it, for Repository
+    ArrayList<Commit> history(int count) throws IOException {
+        ArrayList<Commit> history = new ArrayList<Commit>();
+        Integer id = branchToCurrentID.get(currentBranch);
+        for (; id != Commit.NO_PARENT && count > 0; id = parent(id), count--) {
+            history.add(peek(id));
         }
+        return history;
     }
 
-    public void findIds(String[] tokens) {
+    //the commits with exactly this message, for Repository
+    ArrayList<Commit> find(String message) throws IOException {
+        ArrayList<Commit> found = new ArrayList<Commit>();
+        for (Integer id: messages.find(message, MessageIndex.Match.EXACT, commit)) {
+            found.add(peek(id));
+        }
+        return found;
+    }
+
+    //a commit for reading only: not kept around, so walking all of history stays small
+    private Commit peek(Integer id) throws IOException {
+        Commit c = loadedCommits.get(id);
+        return c != null ? c : commits.read(id);
+    }
+
+    //only the metadata of each commit is read, never its files
+    //find [-w word | -p word prefix | -s substring | message], looked up in the message index
+    public void findIds(String[] tokens) throws IOException, GitletException {
+        MessageIndex.Match match = MessageIndex.Match.EXACT;
+        if (tokens.length == 2 && tokens[0].equals("-w")) {
+            match = MessageIndex.Match.TOKEN;
+        } else if (tokens.length == 2 && tokens[0].equals("-p")) {
+            match = MessageIndex.Match.PREFIX;
+        } else if (tokens.length == 2 && tokens[0].equals("-s")) {
+            match = MessageIndex.Match.SUBSTRING;
+        }
         if (tokens.length == 0) {
-            System.out.println("Did not enter enough arguments.");
+            throw new GitletException.Usage("Did not enter enough arguments.");
         } else {
-            String message = tokens[0];
-            if (findCommitID.get(message) == null) {
-                System.out.println("Found no commit with that message.");
-            } else {
-                for (File path: findCommitID.get(message)) {
-                    System.out.println(path.getName());
-                }
+            String message = match == MessageIndex.Match.EXACT ? tokens[0] : tokens[1];
+            ArrayList<Integer> found = messages.find(message, match, commit);
+            for (Integer id: found) {
+                out().println(id);
+            }
+            if (found.isEmpty()) {
+                out().println("Found no commit with that message.");
             }
         }
     } 
 
-    public void getStatus() {
-        System.out.println("=== Branches ===");
-        for (String branch: branchToCurrentID.keySet()) {
+    //diff [commit id [commit id]] [-- paths]: unified diffs of the files that differ between
+    //two commits, or between one (by default the current branch's head) and the working
+    //directory. Only subtrees whose hashes differ are read, and one file at a time
+    public void diff(String[] tokens) throws IOException, GitletException {
+        ArrayList<Integer> ids = new ArrayList<Integer>();
+        ArrayList<File> paths = new ArrayList<File>();
+        try {
+            boolean inPaths = false;
+            for (String token: tokens) {
+                if (inPaths) {
+                    paths.add(new File(token).toPath().normalize().toFile());
+                } else if (token.equals("--")) {
+                    inPaths = true;
+                } else {
+                    ids.add(Integer.parseInt(token));
+                }
+            }
+            if (ids.size() > 2) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            throw new GitletException.Usage("Usage: diff [commit id [commit id]] [-- paths]");
+        }
+        for (Integer id: ids) {
+            if (!commitExists(id)) {
+                throw new GitletException.NotFound("No commit with that id exists.");
+            }
+        }
+        Tree from = tree(ids.isEmpty() ? branchToCurrentID.get(currentBranch) : ids.get(0));
+        Tree to = ids.size() == 2 ? tree(ids.get(1)) : null;
+        TreeMap<String, File> changed = new TreeMap<String, File>(); //sorted by path
+        if (to != null) {
+            for (File file: Tree.diff(from, to).keySet()) {
+                changed.put(file.getPath(), file);
+            }
+        } else {
+            HashSet<File> tracked = new HashSet<File>(from.files().keySet());
+            tracked.addAll(filesAdded);
+            for (File file: tracked) {
+                if (!onDisk(file).exists() || !from.contains(file)
+                    || !statCache.hash(file).equals(from.getHash(file))) {
+                    changed.put(file.getPath(), file);
+                }
+            }
+        }
+
+        PrintStream out = pager();
+        for (File file: changed.values()) {
+            if (underAny(file, paths)) {
+                String before = from.contains(file) ? from.getHash(file) : null;
+                if (to != null) {
+                    String after = to.contains(file) ? to.getHash(file) : null;
+                    printDiff(out, file, before, after, after == null ? null : objects.readText(after));
+                } else {
+                    String after = onDisk(file).exists() ? statCache.hash(file) : null;
+                    printDiff(out, file, before, after,
+                              after == null ? null : objects.readText(onDisk(file)));
+                }
+            }
+        }
+        out.flush();
+    }
+
+    //hash is null where the file does not exist, text is null for binary files
+    private void printDiff(PrintStream out, File file, String before, String after, 
+                           String afterText) throws IOException {
+        String beforeText = before == null ? "" : objects.readText(before);
+        String a = before == null ? "/dev/null" : "a/" + file.getPath();
+        String b = after == null ? "/dev/null" : "b/" + file.getPath();
+        out.println("diff --git a/" + file.getPath() + " b/" + file.getPath());
+        if (beforeText == null || (after != null && afterText == null)) {
+            out.println("Binary files " + a + " and " + b + " differ");
+            return;
+        }
+        out.println("--- " + a);
+        out.println("+++ " + b);
+        Diff.unified(out, Diff.lines(beforeText), Diff.lines(after == null ? "" : afterText), 3);
+    }
+
+    private static boolean underAny(File file, ArrayList<File> paths) {
+        if (paths.isEmpty()) {
+            return true;
+        }
+        for (File path: paths) {
+            if (path.getPath().isEmpty() || file.toPath().normalize().startsWith(path.toPath())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //repack: moves every object into a single pack file, storing versions of the same file
+    //as deltas of each other. The paths the objects were committed under group them
+    public void repack() throws IOException {
+        HashMap<String, String> paths = new HashMap<String, String>();
+        for (Integer id = 0; id <= commit; id++) {
+            if (commitExists(id)) {
+                peek(id).getTree().paths(paths);
+            }
+        }
+        int count = new PackWriter(objects).repack(paths);
+        out().println("Packed " + count + " objects.");
+    }
+
+    //gc [--grace days]: deletes the commits no branch leads to and the objects only they
+    //used. Anything committed or written within the grace period, 14 days by default, is
+    //kept: it may be a branch removed by mistake or belong to a command still running
+    public void gc(String[] tokens) throws IOException, GitletException {
+        long graceDays = 14;
+        try {
+            if (tokens.length == 2 && tokens[0].equals("--grace")) {
+                graceDays = Long.parseLong(tokens[1]);
+            } else if (tokens.length != 0) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            throw new GitletException.Usage("Usage: gc [--grace days]");
+        }
+        long before = System.currentTimeMillis() - graceDays * 24 * 60 * 60 * 1000;
+
+        //mark every commit a branch or a recent commit leads to
+        ArrayList<Integer> roots = new ArrayList<Integer>(branchToCurrentID.values());
+        for (Integer id = 0; id <= commit; id++) {
+            if (commitExists(id) && graph().timestamp(id) >= before) {
+                roots.add(id);
+            }
+        }
+        HashSet<Integer> live = new HashSet<Integer>();
+        for (Integer root: roots) {
+            for (Integer id = root; id != Commit.NO_PARENT && live.add(id); id = parent(id)) {
+                continue; //stops at the first commit an earlier root already reached
+            }
+        }
+        ArrayList<Integer> dead = new ArrayList<Integer>();
+        for (Integer id = 0; id <= commit; id++) {
+            if (commitExists(id) && !live.contains(id)) {
+                dead.add(id);
+            }
+        }
+        //and every object their trees are made of
+        HashMap<String, String> paths = new HashMap<String, String>();
+        for (Integer id: live) {
+            peek(id).getTree().paths(paths);
+        }
+        for (String hash: new ArrayList<String>(paths.keySet())) {
+            if (!paths.get(hash).endsWith("/")) { //a file, which may be chunked
+                for (String chunk: objects.chunks(hash)) {
+                    paths.putIfAbsent(chunk, paths.get(hash));
+                }
+            }
+        }
+
+        //sweep, only once the removals are durable: a crash in between leaves objects that
+        //nothing points at, which the next gc deletes, never commits whose objects are gone
+        Journal journal = new Journal(gitletDir);
+        commits.remove(dead, journal);
+        journal.commit();
+        for (Integer id: dead) {
+            loadedCommits.remove(id);
+        }
+        int removed = objects.sweep(paths.keySet(), before);
+        removed += new PackWriter(objects).prune(paths, before);
+        out().println("Removed " + dead.size() + " commits and " + removed + " objects.");
+    }
+
+    public void getStatus() throws IOException {
+        Status status = status();
+        out().println("=== Branches ===");
+        for (String branch: status.getBranches()) {
             if (branch.equals(currentBranch)) {
-                System.out.println("*" + branch);
+                out().println("*" + branch);
             } else {
-                System.out.println(branch);
+                out().println(branch);
             }
         }
-        System.out.println();
-        System.out.println("=== Staged Files ===");
-        for (File file: filesAdded) {
-            System.out.println(file);
+        out().println();
+        out().println("=== Staged Files ===");
+        for (File file: status.getStaged()) {
+            out().println(file);
         }
-        System.out.println();
-        System.out.println("=== Files Marked for Removal ===");
-        for (File file: fileForRemoval) {
-            System.out.println(file);
+        out().println();
+        out().println("=== Files Marked for Removal ===");
+        for (File file: status.getRemoved()) {
+            out().println(file);
+        }
+        out().println();
+        out().println("=== Modifications Not Staged For Commit ===");
+        for (File file: status.getModified()) {
+            out().println(file + " (modified)");
+        }
+        for (File file: status.getDeleted()) {
+            out().println(file + " (deleted)");
+        }
+        out().println();
+        out().println("=== Untracked Files ===");
+        for (File file: status.getUntracked()) {
+            out().println(file);
         }
     }
 
-    public void checkout(String[] tokens) throws IOException {
-        if (tokens.length == 0) {
-            System.out.println("Checkout takes 1 or 2 arguments");
+    //what getStatus prints
+    public Status status() throws IOException {
+        Status status = new Status(currentBranch);
+        status.branches.addAll(branchToCurrentID.keySet());
+        status.staged.addAll(filesAdded);
+        status.removed.addAll(fileForRemoval);
+
+        //the working directory against the head, staged changes are listed above already
+        StatusWalker walker = new StatusWalker(root,
+                                               tree(branchToCurrentID.get(currentBranch)).files(),
+                                               statCache,
+                                               new IgnoreRules(new File(root, ".gitletignore")));
+        walker.walk();
+        for (File file: walker.getModified()) {
+            if (!filesAdded.contains(file)) {
+                status.modified.add(file);
+            }
         }
-        if (!getConfirmation()) {
-            return;
+        for (File file: walker.getDeleted()) {
+            if (!fileForRemoval.contains(file)) {
+                status.deleted.add(file);
+            }
+        }
+        for (File file: walker.getUntracked()) {
+            if (!filesAdded.contains(file)) {
+                status.untracked.add(file);
+            }
+        }
+        return status;
+    }
+
+    public void checkout(String[] tokens) throws IOException, GitletException {
+        if (tokens.length == 0) {
+            throw new GitletException.Usage("Checkout takes 1 or 2 arguments");
         }
+        confirm();
         if (tokens.length == 1) {
             String path = tokens[0]; 
             File file = new File(path);
             if (branchToCurrentID.keySet().contains(path)) { //checks if it's a branch
                 checkOutBranch(path);
-            } else if (commitHist.get(branchToCurrentID.get(currentBranch)).containsKey(file)) { 
-                //retrieves the directory of the file path
-                File fileInGitlet = commitHist.get(commit).get(file); 
-                File target = new File(path);
-                FileUtil.copyFile(fileInGitlet, target);
+            } else if (tree(branchToCurrentID.get(currentBranch)).contains(file)) { 
+                //retrieves the hash of the file's contents in the current commit
+                String hash = tree(branchToCurrentID.get(currentBranch)).getHash(file); 
+                objects.copyTo(hash, onDisk(file));
+                statCache.record(file, hash);
             } else {
-                System.out.println("File does not exist in the most recent commit,
-                                     or no such branch exists.");
+                throw new GitletException.NotFound("File does not exist in the most recent commit, "
+                                                   + "or no such branch exists.");
             }
         } else {
+            Integer commitID;
             try {
-                Integer commitID = Integer.parseInt(tokens[0]);
-                if (!commitHist.containsKey(commitID)) {
-                    System.out.println("No commit with that id exists.");
-                    return;
-                }
-                String fileName = tokens[1];
-                File path = new File(fileName);
-                File idDirectory = commitHist.get(commitID).get(path);
-                FileUtil.copyFile(idDirectory, path);
-            } catch (Exception e) {
-                System.out.println("File does not exist in that commit.");
-            }           
+                commitID = Integer.parseInt(tokens[0]);
+            } catch (NumberFormatException e) {
+                throw new GitletException.NotFound("File does not exist in that commit.");
+            }
+            if (!commitExists(commitID)) {
+                throw new GitletException.NotFound("No commit with that id exists.");
+            }
+            File path = new File(tokens[1]);
+            if (!tree(commitID).contains(path)) {
+                throw new GitletException.NotFound("File does not exist in that commit.");
+            }
+            String hash = tree(commitID).getHash(path);
+            objects.copyTo(hash, onDisk(path));
+            statCache.record(path, hash);
         }
     }
 
-    public void createBranch(String[] tokens) {
+    public void createBranch(String[] tokens) throws GitletException {
         if (tokens.length != 1) {
-            System.out.println("branch takes in 1 argument");
-            return;
+            throw new GitletException.Usage("branch takes in 1 argument");
         }
         String name = tokens[0];
         if (branchToCurrentID.containsKey(name)) {
-            System.out.println("A branch with that name already exists.");
+            throw new GitletException.Rejected("A branch with that name already exists.");
         } else {
-            branchToCurrentID.put(name, commit);
-            branchToDir.put(name, branchToDir.get(currentBranch));
+            branchToCurrentID.put(name, branchToCurrentID.get(currentBranch));
         }   
     }
 
     //gitlet main method will serialize so we just need to change current branch
     public void checkOutBranch(String branch) throws IOException {         
         if (currentBranch.equals(branch)) {
-            System.out.println("No need to checkout the current branch.");
+            out().println("No need to checkout the current branch.");
             return;
         } else {
+            Tree current = tree(branchToCurrentID.get(currentBranch));
             currentBranch = branch; //checkout already makes sure our branch exists
             int branchesCommit = branchToCurrentID.get(branch);
-            loadInheritedFiles(commitHist.get(branchesCommit));
+            loadInheritedFiles(current, tree(branchesCommit));
         }
     }
 
-    public void removeBranch(String[] tokens) {
+    public void removeBranch(String[] tokens) throws GitletException {
         if (tokens.length == 0) {
-            System.out.println("remove branch takes in 1 argument");
+            throw new GitletException.Usage("remove branch takes in 1 argument");
         } else {
             String branch = tokens[0];
             if (!branchToCurrentID.keySet().contains(branch)) {
-                System.out.println("A branch with that name does not exist.");
+                throw new GitletException.NotFound("A branch with that name does not exist.");
             } else if (branch.equals(currentBranch)) {
-                System.out.println("Cannot remove the current branch.");
+                throw new GitletException.Rejected("Cannot remove the current branch.");
             } else {
-                //we don't have to delete the contents because those contents can never be reached again
-                //since its starting directory changes. !!!after testing, we must find a way to delete its contents
+                //its commits stay until gc finds nothing leads to them any more
                 branchToCurrentID.remove(branch);
-                branchToDir.remove(branch);
             }
         }
     }
 
-    public void loadInheritedFiles(HashMap<File, File> inheritedFiles) throws IOException {
-        for (File file: inheritedFiles.keySet()) {
-            File committedFile = inheritedFiles.get(file);
-            FileUtil.copyFile(committedFile, file);
+    //takes the working directory from the files of current to those of inherited, touching
+    //only files whose contents differ and deleting the ones inherited does not have
+    public void loadInheritedFiles(Tree current, Tree inherited) throws IOException {
+        HashMap<File, String> changes = Tree.diff(current, inherited);
+        //deletions first, a deleted file may be where a new directory goes
+        for (File file: changes.keySet()) {
+            if (changes.get(file) == null) {
+                onDisk(file).delete();
+                File dir = file.getParentFile();
+                while (dir != null && onDisk(dir).delete()) { //only once a directory is empty
+                    dir = dir.getParentFile();
+                }
+            }
+        }
+        HashMap<File, String> writes = new HashMap<File, String>();
+        for (File file: changes.keySet()) {
+            if (changes.get(file) != null) {
+                writes.put(file, changes.get(file));
+            }
+        }
+        new WorkingTreeWriter(objects, root).write(writes);
+        for (File file: writes.keySet()) {
+            statCache.record(file, writes.get(file));
         }
     }
 
-    public void reset(String[] tokens) throws IOException {
+    public void reset(String[] tokens) throws IOException, GitletException {
         if (tokens.length == 0) {
-            System.out.println("reset takes in 1 argument");
+            throw new GitletException.Usage("reset takes in 1 argument");
         } else {
-            if (!getConfirmation()) {
-                return;
-            }
+            confirm();
+            Integer commitID;
             try {
-                Integer commitID = Integer.parseInt(tokens[0]);
-                if (commitHist.containsKey(commitID)) {
-                    HashMap<File, File> loadThis = commitHist.get(commitID);
-                    loadInheritedFiles(loadThis);
-                    branchToCurrentID.put(currentBranch, commitID);
-                    File currentDir = branchToDir.get(currentBranch);
-                    Integer currentID = Integer.parseInt(currentDir.getName());
-                    while (!currentID.equals(commitID)) {
-                        currentDir = currentDir.getParentFile();
-                        currentID = Integer.parseInt(currentDir.getName());
-                    }
-                    branchToDir.put(currentBranch, currentDir);
-                } else {
-                    System.out.println("No commit with that id exists.");
-                }   
-            } catch (Exception e) {
-                System.out.println("No commit with that id exists.");
+                commitID = Integer.parseInt(tokens[0]);
+            } catch (NumberFormatException e) {
+                throw new GitletException.NotFound("No commit with that id exists.");
+            }
+            if (!commitExists(commitID)) {
+                throw new GitletException.NotFound("No commit with that id exists.");
             }
-            
+            loadInheritedFiles(tree(branchToCurrentID.get(currentBranch)), tree(commitID));
+            branchToCurrentID.put(currentBranch, commitID);
         }
     }
 
-    public void merge(String[] tokens) throws IOException {
+    //the files merge left a <file>.conflicted next to, see mergeConflicts
+    public ArrayList<File> merge(String[] tokens) throws IOException, GitletException {
         if (tokens.length == 0) {
-            System.out.println("merge takes in 1 argument");
+            throw new GitletException.Usage("merge takes in 1 argument");
         } else {
-            if (!getConfirmation()) {
-                return;
-            }
+            confirm();
             String branch = tokens[0];
             if (!branchToCurrentID.containsKey(branch)) {
-                System.out.println("A branch with that name does not exist.");
+                throw new GitletException.NotFound("A branch with that name does not exist.");
             } else if (currentBranch.equals(branch)) {
-                System.out.println("Cannot merge a branch with itself.");
+                throw new GitletException.Rejected("Cannot merge a branch with itself.");
             } else {
-                File altBranch = branchToDir.get(branch);
-                File currBranch = branchToDir.get(currentBranch);
-                File commonAncestor = findCommonAncestor(altBranch, currBranch);
-                Integer split = Integer.parseInt(commonAncestor.getName());
-                Integer alt = Integer.parseInt(altBranch.getName());
-                Integer curr = Integer.parseInt(currBranch.getName());
+                Integer alt = branchToCurrentID.get(branch);
+                Integer curr = branchToCurrentID.get(currentBranch);
+                Integer split = findCommonAncestor(alt, curr);
                 //merge the files from the alt branch only if we haven't modified the file in the current
 
-                for (File file: commitHist.get(alt).keySet()) {    
-                    boolean currContainsFile = modified.get(curr).containsKey(file);
-                    boolean altContainsFile = modified.get(alt).containsKey(file);
-                    boolean splitContainsFile = modified.get(split).containsKey(file);
+                Tree current = tree(curr);
+                Tree merged = current;
+                HashMap<File, String[]> conflicts = new HashMap<File, String[]>();
+                for (File file: tree(alt).files().keySet()) {    
+                    boolean currContainsFile = tree(curr).contains(file);
+                    boolean altContainsFile = tree(alt).contains(file);
+                    boolean splitContainsFile = tree(split).contains(file);
 
                     boolean altModifiedSinceSplit = !(
                     (altContainsFile && 
-                    (modified.get(alt).get(file).equals(modified.get(split).get(file)))) || //scenario 1
+                    (tree(alt).getLastModified(file).equals(tree(split).getLastModified(file)))) || //scenario 1
                     (splitContainsFile && 
-                    (modified.get(split).get(file).equals(modified.get(alt).get(file)))) || //scenario 2
+                    (tree(split).getLastModified(file).equals(tree(alt).getLastModified(file)))) || //scenario 2
                     (!altContainsFile && !splitContainsFile)); //scenario 3
 
                     boolean currModifiedSinceSplit = !(
                     (currContainsFile && 
-                    (modified.get(curr).get(file).equals(modified.get(split).get(file)))) || //scenario 1
+                    (tree(curr).getLastModified(file).equals(tree(split).getLastModified(file)))) || //scenario 1
                     (splitContainsFile && 
-                    (modified.get(split).get(file).equals(modified.get(curr).get(file)))) || //scenario 2
+                    (tree(split).getLastModified(file).equals(tree(curr).getLastModified(file)))) || //scenario 2
                     (!currContainsFile && !altContainsFile)); //scenario 3        
 
                     //tells us what the currBranch should inherit from altBranchID
                     // if a file has been removed, the modified one should be added
                     if (altModifiedSinceSplit && !currModifiedSinceSplit || 
                             (!currContainsFile && altContainsFile && altModifiedSinceSplit && currModifiedSinceSplit)) { 
-                        modified.get(curr).put(file, alt);
-                        commitHist.get(curr).put(file, commitHist.get(alt).get(file));
+                        merged = merged.with(file, tree(alt).getHash(file), alt);
                     } 
 
-                    //conflicts with modifications
-                    else if (altModifiedSinceSplit && currModifiedSinceSplit) {
-                        File conflictedFile = new File(file.toString() + ".conflicted");
-                        File conflictedGitlet = new File(currBranch, file.toString() + ".conflicted");
-                        commitHist.get(curr).put(conflictedFile, conflictedGitlet);
-                        modified.get(curr).put(conflictedGitlet, curr);
-                        File source = commitHist.get(alt).get(file);
-                        FileUtil.makeRecursiveDirectory(currBranch, conflictedFile);
-                        FileUtil.copyFile(source, conflictedGitlet);
+                    //both sides changed it, merged line by line below
+                    else if (altModifiedSinceSplit && currModifiedSinceSplit
+                             && !tree(alt).getHash(file).equals(tree(curr).getHash(file))) {
+                        String base = splitContainsFile ? tree(split).getHash(file) : null;
+                        conflicts.put(file, new String[] {base, tree(curr).getHash(file),
+                                                          tree(alt).getHash(file)});
                     }
                 }
-                loadInheritedFiles(commitHist.get(curr)); //load all the merged files
+                ArrayList<File> conflicted = new ArrayList<File>();
+                merged = mergeConflicts(merged, conflicts, curr, branch, conflicted);
+                if (merged != current) {
+                    getCommit(curr).setTree(merged);
+                    changedCommits.add(curr);
+                }
+                loadInheritedFiles(current, merged); //load all the merged files
+                return conflicted;
             }
         }
     }
 
-    //look when the two files have the same commit ID
-    public File findCommonAncestor(File branch1, File branch2) {
-        if (branch1.equals(branch2)) {
-            return branch1;
-        } else if (Integer.parseInt(branch1.getName()) > Integer.parseInt(branch2.getName())) {
-            return findCommonAncestor(branch1.getParentFile(), branch2);
-        } else {
-            return findCommonAncestor(branch1, branch2.getParentFile());
+    //a clean merge replaces the file; otherwise the file stays as it is and <file>.conflicted
+    //gets the merge with conflict markers, or for binary files the other side's contents
+    private Tree mergeConflicts(Tree merged, HashMap<File, String[]> conflicts, Integer curr, 
+                                String branch, ArrayList<File> conflicted) throws IOException {
+        HashMap<File, ThreeWayMerge.Result> results = new ThreeWayMerge(objects).mergeAll(
+            conflicts, currentBranch, branch);
+        for (File file: conflicts.keySet()) {
+            File conflictedFile = new File(file.toString() + ".conflicted");
+            ThreeWayMerge.Result r = results.get(file);
+            if (r == null) {
+                merged = merged.with(conflictedFile, conflicts.get(file)[2], curr);
+                conflicted.add(file);
+            } else if (r.getConflicts() == 0) {
+                merged = merged.with(file, objects.writeBytes(r.getContents()), curr);
+            } else {
+                merged = merged.with(conflictedFile, objects.writeBytes(r.getContents()), curr);
+                conflicted.add(file);
+            }
         }
+        return merged;
+    }
+
+    //where the two histories meet, found in the commit graph
+    public Integer findCommonAncestor(Integer branch1, Integer branch2) throws IOException {
+        return graph().commonAncestor(branch1, branch2);
     }
 
     
-    public void rebase(String[] tokens, boolean interactive) throws IOException {
+    public void rebase(String[] tokens, boolean interactive) throws IOException, GitletException {
         if (tokens.length == 0) {
-            System.out.println("rebase requires 1 argument");
+            throw new GitletException.Usage("rebase requires 1 argument");
         }
         String branch = tokens[0];
-        if (!getConfirmation()) {
-            return;
-        }
+        confirm();
         if (!branchToCurrentID.containsKey(branch)) {
-            System.out.println("A branch with that name does not exist.");
+            throw new GitletException.NotFound("A branch with that name does not exist.");
         } else if (branch.equals(currentBranch)) {
-            System.out.println("Cannot rebase a branch onto itself.");
+            throw new GitletException.Rejected("Cannot rebase a branch onto itself.");
         } else {
-            File currBranchDir = branchToDir.get(currentBranch);
-            File altBranchDir = branchToDir.get(branch);
-            File splitPoint = findCommonAncestor(currBranchDir, altBranchDir);
             Integer currBranchID = branchToCurrentID.get(currentBranch);
             Integer altBranchID = branchToCurrentID.get(branch);
-            if (splitPoint.equals(altBranchDir)) {
-                System.out.println("Already up-to-date.");
+            Tree current = tree(currBranchID);
+            Integer splitPoint = findCommonAncestor(currBranchID, altBranchID);
+            if (splitPoint.equals(altBranchID)) {
+                out().println("Already up-to-date.");
                 return;
             }
             //check if the current branch is in the history of branch. SPECIAL CASE
-            if (currBranchDir.toString().equals(splitPoint.toString())) {
-                modified.put(currBranchID, modified.get(altBranchID));
-                commitHist.put(currBranchID, commitHist.get(altBranchID));
+            if (currBranchID.equals(splitPoint)) {
                 branchToCurrentID.put(currentBranch, altBranchID);
-                branchToDir.put(currentBranch, branchToDir.get(branch));
             } else {
                 //Normal Case 
                 rebaseNormalCase(splitPoint, branch, interactive);
             }    
             Integer currentCommitID = branchToCurrentID.get(currentBranch);
-            loadInheritedFiles(commitHist.get(currentCommitID));       
+            loadInheritedFiles(current, tree(currentCommitID));
         }
     }
 
-    public void rebaseNormalCase(File splitPoint, String branch, boolean interactive) throws IOException {
+    public void rebaseNormalCase(Integer splitPointID, String branch, boolean interactive) throws IOException {
         //Set Up
-        File currBranchDir = branchToDir.get(currentBranch);
-        File altBranchDir = branchToDir.get(branch); //return to normal
         Integer altBranchID = branchToCurrentID.get(branch);
-        Integer splitPointID = Integer.parseInt(splitPoint.getName());
         Integer currBranchID = branchToCurrentID.get(currentBranch);                              
-            //change the current branch's directory to the one we want to add to
-        File newDirectory = branchToDir.get(branch);
-        branchToDir.put(currentBranch, newDirectory); 
-        branchToCurrentID.put(currentBranch, branchToCurrentID.get(branch));
+            //change the current branch's head to the one we want to add to
+        branchToCurrentID.put(currentBranch, altBranchID);
 
-        //Add all modified files in the branch we're rebasing that are not modified in the current branch
-        LinkedList<File> currBranchHist = getCurrBranchHist(currBranchDir, splitPoint);
+        //Replay each commit's changes onto the branch: paths only the branch changed keep its
+        //version, paths a replayed commit changed or removed take the commit's. Commits are
+        //only written out once the whole rebase is done
+        LinkedList<Integer> currBranchHist = getCurrBranchHist(currBranchID, splitPointID);
+        Tree files = tree(altBranchID);
 
-        for (File fileHist: currBranchHist) {
+        for (Integer commitID: currBranchHist) {
             boolean replay = true;
             String inputMessage = "Effect of Rebasing " + branch;
             if (interactive) {
-                System.out.println("Currently replaying:");
-                printLog(fileHist.toString() + "/info.txt");
-                HashSet<String> validInputs = new HashSet<String>();
-                validInputs.add("c");
-                validInputs.add("s");
-                validInputs.add("m");
-                String response = askForInput(validInputs);
-                if (response.equals("s")) {
-                    if (fileHist.toString().equals(currBranchHist.getFirst().toString()) || 
-                        fileHist.toString().equals(currBranchHist.getLast().toString())) {
-                        System.out.println("You cannot skip the initial or final commit of a branch.");
-                        validInputs.remove("s");
-                        response = askForInput(validInputs);
-                    } else {
-                        replay = false;
-                    }                                   
+                boolean canSkip = !commitID.equals(currBranchHist.getFirst())
+                    && !commitID.equals(currBranchHist.getLast());
+                ConfirmationPolicy.Replay response = policy.replay(getCommit(commitID), canSkip);
+                if (response == ConfirmationPolicy.Replay.SKIP) {
+                    replay = !canSkip;
+                } else if (response == ConfirmationPolicy.Replay.MESSAGE) {
+                    inputMessage = policy.message(getCommit(commitID));
+                }
+            }
+            //only the paths the commit changed, on top of what has been replayed. A skipped
+            //commit's changes are still applied and end up in the next one, as they always have
+            HashMap<File, String> changes = Tree.diff(tree(parent(commitID)), tree(commitID));
+            for (File file: changes.keySet()) {
+                if (changes.get(file) == null) {
+                    files = files.without(file);
+                } else {
+                    files = files.with(file, changes.get(file), 
+                                       tree(commitID).getLastModified(file));
                 }
-                if (response.equals("m")) {
-                    System.out.println("Please enter a new message for this commit.");
-                    Scanner in = new Scanner(System.in);
-                    inputMessage = in.nextLine();
-                }        
             }
             if (replay) {
-                Integer commitID = Integer.parseInt(fileHist.getName());
-                HashMap<File, File> frameFiles = commitHist.get(commitID);
-
-                int prevCommit = branchToCurrentID.get(branch);
+                int prevCommit = branchToCurrentID.get(currentBranch);
                 commit += 1;
                 branchToCurrentID.put(currentBranch, commit);
-                //create a duplicate not a pointer
-                commitHist.put(commit, new HashMap<File, File>());
-                modified.put(commit, new HashMap<File, Integer>());
-
-                //inherit all files from the replay 
-                for (File file: frameFiles.keySet()) {
-                    commitHist.get(commit).put(file, commitHist.get(commitID).get(file));
-                    modified.get(commit).put(file, modified.get(commitID).get(file));
-                }
-                //determine which files to inherit for a given frame
-                HashMap<File, File> shallInherit = shallInherit(commitID, altBranchID, splitPointID);
-                for (File file: shallInherit.keySet()) {
-                    File rebasedBranchFile = commitHist.get(altBranchID).get(file);
-                    Integer fileModif = modified.get(altBranchID).get(file);
-                    commitHist.get(commit).put(file, rebasedBranchFile);
-                    modified.get(commit).put(file, fileModif);
-                }
-                rebaseCommit(inputMessage, branch);                
+                //the replayed commit sits on top of whatever the current branch points to now
+                writeCommitInfo(inputMessage, prevCommit, files);                
             }
         }
     }
 
-    
-    //rebaseCommit will add all the shallInherit files to the newCommit, make sure files are inherited from the
-    //branch we are rebasing to, and updates the directories
-    public void rebaseCommit(String inputMessage, String rebasingBranch) throws IOException {       
-        branchToDir.put(currentBranch, new File(branchToDir.get(currentBranch), commit.toString())); //change the currentDir
-        File currentDir = branchToDir.get(currentBranch);
-        currentDir.mkdir();
-
-        //creates the commit info log
-        String pathName = currentDir.toString() + "/info.txt";
-        PrintWriter out = new PrintWriter(pathName); //Each Commit folder has an info.txt file
-        out.println("Commit " + commit + ".");
-        out.println(new Timestamp(System.currentTimeMillis()));
-        out.println(inputMessage);
-        out.close();
-
-        //for find purposes
-        if (findCommitID.get(inputMessage) == null) {
-            findCommitID.put(inputMessage, new LinkedList<File>());
-        }
-        findCommitID.get(inputMessage).addFirst(currentDir); //add the path to the LinkedList asssociated with the 
-    }
-
-    //Gives us back a map of files that should be inherited from the alternate commit ID
-    public HashMap<File, File> shallInherit(Integer curr, Integer alt, Integer split) {
-        HashMap<File, File> inherited = new HashMap<File, File>();
-
-        for (File file: commitHist.get(alt).keySet()) {
-            //if a file has been removed, then we consider that file to be modified, and should not inherit from rebase
-            boolean currContainsFile = modified.get(curr).containsKey(file);
-            boolean altContainsFile = modified.get(alt).containsKey(file);
-            boolean splitContainsFile = modified.get(split).containsKey(file);
-
-            boolean altModifiedSinceSplit = !(
-            (altContainsFile && 
-            (modified.get(alt).get(file).equals(modified.get(split).get(file)))) || //scenario 1
-            (splitContainsFile && 
-            (modified.get(split).get(file).equals(modified.get(alt).get(file)))) || //scenario 2
-            (!altContainsFile && !splitContainsFile)); //scenario 3
-
-            boolean currModifiedSinceSplit = !(
-            (currContainsFile && 
-            (modified.get(curr).get(file).equals(modified.get(split).get(file)))) || //scenario 1
-            (splitContainsFile && 
-            (modified.get(split).get(file).equals(modified.get(curr).get(file)))) || //scenario 2
-            (!currContainsFile && !altContainsFile)); //scenario 3        
-
-            if (altModifiedSinceSplit && !currModifiedSinceSplit || 
-                    (!currContainsFile && altContainsFile && altModifiedSinceSplit && currModifiedSinceSplit)) { 
-                inherited.put(file, commitHist.get(alt).get(file));
-            } 
-        }   
-        return inherited;
-    }
-
-    public LinkedList<File> getCurrBranchHist(File currBranchDir, File splitPoint) {
-        LinkedList<File> currBranchHist = new LinkedList<File>();
-        while (!currBranchDir.getName().equals(splitPoint.getName())) {
-            currBranchHist.addFirst(currBranchDir);
-            currBranchDir = currBranchDir.getParentFile();
+    public LinkedList<Integer> getCurrBranchHist(Integer currBranchID, Integer splitPoint) 
+            throws IOException {
+        LinkedList<Integer> currBranchHist = new LinkedList<Integer>();
+        while (!currBranchID.equals(splitPoint)) {
+            currBranchHist.addFirst(currBranchID);
+            currBranchID = parent(currBranchID);
         }
         return currBranchHist;
     }
 
-    public boolean getConfirmation() {
-        System.out.println("Warning: The command you entered may alter the files in your working directory. Uncommitted changes may be lost. Are you sure you want to continue? (yes/no)");
-        Scanner in = new Scanner(System.in);
-        String input = in.nextLine();
-        String yes = new String("yes");
-        if (yes.equals(input)) {
-            filesAdded.clear();
-            fileForRemoval.clear();
-            return true;
-        } else {
-            System.out.println("Did not type 'yes' so aborting");
-            return false;
-        }
+    //batch runs: warnings are taken as a yes and rebased commits kept as they are
+    public void setNonInteractive(boolean nonInteractive) {
+        policy = nonInteractive ? ConfirmationPolicy.YES : ConfirmationPolicy.CONSOLE;
+    }
+
+    public void setConfirmationPolicy(ConfirmationPolicy policy) {
+        this.policy = policy;
+    }
+
+    public ConfirmationPolicy getConfirmationPolicy() {
+        return policy;
+    }
+
+    //where messages and listings are printed, null for System.out
+    public void setOutput(PrintStream out) {
+        this.out = out;
+    }
+
+    private PrintStream out() {
+        return out != null ? out : System.out;
     }
-    private String askForInput(HashSet<String> validInputs) {
-        String input = "default";
-        while (!validInputs.contains(input)) {
-            System.out.println("Would you like to (c)ontinue, (s)kip this commit, or change this commit's (m)essage?");
-            Scanner in = new Scanner(System.in);
-            input = in.nextLine(); 
+
+    //asks the policy before the working directory is overwritten, which unstages everything
+    private void confirm() throws GitletException {
+        if (!policy.confirm("Warning: The command you entered may alter the files in your working directory. Uncommitted changes may be lost. Are you sure you want to continue? (yes/no)")) {
+            throw new GitletException.Aborted("Did not type 'yes' so aborting");
         }
-        return input;
+        filesAdded.clear();
+        fileForRemoval.clear();
     }
 }
@@ -4,6 +4,18 @@ import org.junit.After;
 import static org.junit.Assert.*;
 import java.io.IOException;
 import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 public class GitTest {
 
@@ -30,7 +42,7 @@ public class GitTest {
     @Test
     public void testBasics() throws IOException {
         File original = new File("wug.txt");
-        File copy = new File("./.gitlet/0/1/wug.txt");
+        File copy = stored(original);
         assertEquals(false, copy.exists());
         Gitlet.main(new String[] {"add", "wug.txt"});
         Gitlet.main(new String[] {"commit", "YOLO"});
@@ -53,7 +65,7 @@ public class GitTest {
         assertEquals(true, test1.exists());
         assertEquals(true, test2.exists());
         assertEquals(true, test3.exists());
-        File commitedFile = new File(".gitlet/0/1/2/checkingOut/test1/test2/test3/hia.txt");
+        File commitedFile = stored(fullFilePathInWD);
         assertEquals(false, commitedFile.exists());
         Gitlet.main(new String[] {"add", "checkingOut/test1/test2/test3/hia.txt"});
         Gitlet.main(new String[] {"commit", "testing that .gitlet has multiple directories"});
@@ -69,10 +81,10 @@ public class GitTest {
     }
 
     @Test
-    public void testCheckout() {
+    public void testCheckout() throws IOException {
         File hey = new File("hey/hey.txt");
         FileUtil.createFile(hey.toString(), "hey");
-        File gitHey = new File(".gitlet/0/1/hey/hey.txt");
+        File gitHey = stored(hey);
         Gitlet.main(new String[] {"add", hey.toString()});
         Gitlet.main(new String[] {"commit", "contains hey.txt"});
         assertEquals(true, gitHey.exists());
@@ -83,7 +95,7 @@ public class GitTest {
         FileUtil.createFile(hey.toString(), "hey 2");
         Gitlet.main(new String[] {"add", hey.toString()});
         Gitlet.main(new String[] {"commit", "contains hey 2.txt"});
-        File gitHey2 = new File(".gitlet/0/1/2/3/hey/hey.txt");
+        File gitHey2 = stored(hey);
         assertEquals(FileUtil.getText(hey.toString()), FileUtil.getText(gitHey2.toString()));
         assertEquals("hey 2", FileUtil.getText(gitHey2.toString()));
         Gitlet.main(new String[] {"checkout", "1", hey.toString()});
@@ -124,10 +136,9 @@ public class GitTest {
     }        
 
     @Test
-    public void testCheckoutBranch() {
+    public void testCheckoutBranch() throws IOException {
         File hey = new File("hey/hey.txt");
         FileUtil.createFile(hey.toString(), "hey");
-        File gitHey = new File(".gitlet/0/1/hey/hey.txt");
         Gitlet.main(new String[] {"add", hey.toString()});
         Gitlet.main(new String[] {"commit", "contains hey.txt"});
         Gitlet.main(new String[] {"branch", "Anthony"}); 
@@ -162,8 +173,8 @@ public class GitTest {
         assertEquals("hey", FileUtil.getText(hey.toString()));
         Gitlet.main(new String[] {"rebase", "Anthony"});
         assertEquals("this is not a hey", FileUtil.getText(hey.toString()));
-        File wugRebased = new File(".gitlet/0/1/3/4/wug.txt");
-        File heymanRebased = new File(".gitlet/0/1/3/heyman.txt");
+        File wugRebased = stored(wug);
+        File heymanRebased = stored(heyman);
         assertEquals(true, wugRebased.exists());
         assertEquals(true, heymanRebased.exists());
         assertEquals("this is a wug.", FileUtil.getText(wugRebased.toString()));
@@ -203,7 +214,6 @@ public class GitTest {
     public void testReset() { 
         File hey = new File("hey/hey.txt");
         FileUtil.createFile(hey.toString(), "hey");
-        File gitHey = new File(".gitlet/0/1/hey/hey.txt");
         Gitlet.main(new String[] {"add", hey.toString()});
         Gitlet.main(new String[] {"commit", "contains hey"});
         FileUtil.createFile(hey.toString(), "hey 2");
@@ -282,6 +292,888 @@ public class GitTest {
         Gitlet.main(new String[] {"add", hey.toString()}); 
     }
 
+    @Test
+    public void testIdenticalContentStoredOnce() throws IOException {
+        File hey = new File("hey/hey.txt");
+        File tester = new File("tester.txt");
+        FileUtil.createFile(hey.toString(), "same contents");
+        FileUtil.createFile(tester.toString(), "same contents");
+        Gitlet.main(new String[] {"add", hey.toString()});
+        Gitlet.main(new String[] {"add", tester.toString()});
+        Gitlet.main(new String[] {"commit", "two copies"});
+        Gitlet.main(new String[] {"branch", "Anthony"});
+        Gitlet.main(new String[] {"checkout", "Anthony"});
+        FileUtil.createFile(hey.toString(), "different");
+        Gitlet.main(new String[] {"add", hey.toString()});
+        Gitlet.main(new String[] {"commit", "changed hey"});
+        FileUtil.createFile(hey.toString(), "same contents");
+        Gitlet.main(new String[] {"add", hey.toString()});
+        Gitlet.main(new String[] {"commit", "changed hey back"});
+        assertEquals(1, countObjects(new File(".gitlet/objects"), "same contents"));
+        tester.delete();
+    }
+
+    @Test
+    public void testCommitLogLayout() throws IOException {
+        File hey = new File("hey/hey.txt");
+        for (int i = 1; i <= 3; i++) {
+            FileUtil.createFile(hey.toString(), "hey " + i);
+            Gitlet.main(new String[] {"add", hey.toString()});
+            Gitlet.main(new String[] {"commit", "contains hey " + i});
+        }
+        assertEquals(false, new File(".gitlet/0").exists());
+        assertEquals(false, new File(".gitlet/commits").exists());
+        assertEquals(true, new File(".gitlet/commit-log").exists());
+        assertEquals(true, new File(".gitlet/commit-log.idx").exists());
+
+        //records that start in one segment of the log and end in the next read the same
+        CommitStore store = new CommitStore(new File(".gitlet"),
+                                            new ObjectStore(new File(".gitlet/objects")));
+        store.setSegmentSize(7);
+        for (int i = 1; i <= 3; i++) {
+            assertEquals("contains hey " + i, store.read(i).getMessage());
+        }
+        Gitlet.main(new String[] {"reset", "1"});
+        assertEquals("hey 1", FileUtil.getText(hey.toString()));
+    }
+
+    @Test
+    public void testReadOnlyCommandsKeepState() {
+        File hey = new File("hey/hey.txt");
+        FileUtil.createFile(hey.toString(), "hey");
+        Gitlet.main(new String[] {"add", hey.toString()});
+        Gitlet.main(new String[] {"commit", "contains hey"});
+        File state = new File(".gitlet/state");
+        File record = new File(".gitlet/commit-log");
+        state.setLastModified(1000);
+        record.setLastModified(1000);
+        Gitlet.main(new String[] {"status"});
+        Gitlet.main(new String[] {"log"});
+        Gitlet.main(new String[] {"find", "contains hey"});
+        assertEquals(1000, state.lastModified());
+        assertEquals(1000, record.lastModified());
+    }
+
+    @Test
+    public void testUnchangedDirectoriesShared() {
+        File hey = new File("hey/hey.txt");
+        File deep = new File("checkingOut/test1/deep.txt");
+        new File("checkingOut/test1").mkdirs();
+        FileUtil.createFile(hey.toString(), "hey");
+        FileUtil.createFile(deep.toString(), "deep");
+        Gitlet.main(new String[] {"add", hey.toString()});
+        Gitlet.main(new String[] {"add", deep.toString()});
+        Gitlet.main(new String[] {"commit", "two directories"});
+        int trees = countObjectsStartingWith(new File(".gitlet/objects"), "GLTR");
+        FileUtil.createFile(hey.toString(), "hey 2");
+        Gitlet.main(new String[] {"add", hey.toString()});
+        Gitlet.main(new String[] {"commit", "changed hey"});
+        //only the root and hey/ are new, checkingOut/ and checkingOut/test1/ are shared
+        assertEquals(trees + 2, countObjectsStartingWith(new File(".gitlet/objects"), "GLTR"));
+        Gitlet.main(new String[] {"checkout", "1", deep.toString()});
+        assertEquals("deep", FileUtil.getText(deep.toString()));
+    }
+
+    @Test
+    public void testAddDirectoryUsesStatCache() {
+        File dir = new File("tempDir");
+        dir.mkdir();
+        File a = new File("tempDir/a.txt");
+        File b = new File("tempDir/b.txt");
+        FileUtil.createFile(a.toString(), "aaa");
+        FileUtil.createFile(b.toString(), "bbb");
+        a.setLastModified(1000);
+        b.setLastModified(1000);
+        Gitlet.main(new String[] {"add", dir.toString()});
+        Gitlet.main(new String[] {"commit", "added a directory"});
+
+        //same size, mtime and inode, so the cache answers without reading the file
+        FileUtil.writeFile(a.toString(), "AAA");
+        a.setLastModified(1000);
+        //b really changed
+        FileUtil.createFile(b.toString(), "bbbb");
+        Gitlet.main(new String[] {"add", dir.toString()});
+        Gitlet.main(new String[] {"commit", "changed b"});
+        Gitlet.main(new String[] {"checkout", "1", b.toString()});
+        assertEquals("bbb", FileUtil.getText(b.toString()));
+        Gitlet.main(new String[] {"checkout", "2", b.toString()});
+        assertEquals("bbbb", FileUtil.getText(b.toString()));
+        Gitlet.main(new String[] {"checkout", "2", a.toString()});
+        assertEquals("aaa", FileUtil.getText(a.toString()));
+    }
+
+    @Test
+    public void testCopyReplacesLinkedFile() throws IOException {
+        File object = new File("linkedObject.txt");
+        File linked = new File("linked.txt");
+        File source = new File("newer.txt");
+        FileUtil.createFile(object.toString(), "stored");
+        FileUtil.createFile(source.toString(), "newer");
+        FileUtil.linkFile(object, linked);
+        assertEquals("stored", FileUtil.getText(linked.toString()));
+
+        //copying over a link must not change the file it was linked to
+        FileUtil.copyFile(source, linked);
+        assertEquals("newer", FileUtil.getText(linked.toString()));
+        assertEquals("stored", FileUtil.getText(object.toString()));
+        object.delete();
+        linked.delete();
+        source.delete();
+    }
+
+    @Test
+    public void testDaemonRunsForwardedCommands() throws Exception {
+        Thread daemon = new Thread(() -> Gitlet.main(new String[] {"daemon"}));
+        daemon.start();
+        File socket = new File(".gitlet/daemon.sock");
+        for (int i = 0; i < 100 && !socket.exists(); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(true, socket.exists());
+
+        //these are forwarded to the daemon thread, which loaded the repository once
+        File served = new File("served.txt");
+        FileUtil.createFile(served.toString(), "served");
+        Gitlet.main(new String[] {"add", served.toString()});
+        Gitlet.main(new String[] {"commit", "through the daemon"});
+        Gitlet.main(new String[] {"daemon", "stop"});
+        daemon.join(5000);
+        assertEquals(false, socket.exists());
+
+        //the daemon saved its commit for the next command that loads the repository itself
+        FileUtil.writeFile(served.toString(), "changed");
+        Gitlet.main(new String[] {"checkout", "1", served.toString()});
+        assertEquals("served", FileUtil.getText(served.toString()));
+        served.delete();
+    }
+
+    @Test
+    public void testDaemonSeesCommitsChangedElsewhere() throws Exception {
+        Repository repo = Repository.open(Paths.get("."));
+        repo.branch("other");
+        repo.checkout("other");
+        FileUtil.createFile("merged.txt", "from other");
+        repo.add("merged.txt");
+        repo.commit("on other");
+        repo.checkout("master");
+
+        Process daemon = gitlet("daemon");
+        File socket = new File(".gitlet/daemon.sock");
+        for (int i = 0; i < 100 && !socket.exists(); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(true, socket.exists());
+        try {
+            assertTrue(output(new String[] {"status"}).contains("*master")); //read its commit
+            //changes only master's commit, the state file stays byte for byte the same
+            byte[] state = Files.readAllBytes(Paths.get(".gitlet/state"));
+            repo.merge("other");
+            assertArrayEquals(state, Files.readAllBytes(Paths.get(".gitlet/state")));
+            assertFalse(output(new String[] {"status"}).contains("merged.txt"));
+        } finally {
+            Gitlet.main(new String[] {"daemon", "stop"});
+            assertTrue(daemon.waitFor(30, TimeUnit.SECONDS));
+            new File("merged.txt").delete();
+        }
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        File a = new File("batchA.txt");
+        File b = new File("batchB.txt");
+        File script = new File("batch.txt");
+        FileUtil.createFile(a.toString(), "a");
+        FileUtil.createFile(b.toString(), "b");
+        FileUtil.createFile(script.toString(), "# two commits and a checkout\n"
+            + "add batchA.txt\n"
+            + "commit \"first of two\"\n"
+            + "\n"
+            + "add batchB.txt\n"
+            + "checkpoint\n"
+            + "commit \"second of two\"\n"
+            + "checkout batchA.txt\n");
+        FileUtil.writeFile(a.toString(), "a");
+        //checkout in the script must not wait for a yes
+        Gitlet.main(new String[] {"batch", script.toString()});
+        FileUtil.writeFile(b.toString(), "changed");
+        Gitlet.main(new String[] {"checkout", "1", b.toString()});
+        assertEquals("changed", FileUtil.getText(b.toString()));
+        Gitlet.main(new String[] {"checkout", "2", b.toString()});
+        assertEquals("b", FileUtil.getText(b.toString()));
+        assertArrayEquals(new String[] {"commit", "a \"quoted\" message"}, 
+                          Batch.split("  commit \"a \\\"quoted\\\" message\" "));
+
+        //a batch leaves the policy it found, not the console
+        Git g = Serialize.load(Gitlet.CURRENT);
+        g.setConfirmationPolicy(ConfirmationPolicy.YES);
+        FileUtil.writeFile(script.toString(), "branch fromBatch\n");
+        g = Batch.run(g, new String[] {script.toString()});
+        assertSame(ConfirmationPolicy.YES, g.getConfirmationPolicy());
+        a.delete();
+        b.delete();
+        script.delete();
+    }
+
+    @Test
+    public void testCheckoutOnlyTouchesChangedFiles() {
+        File same = new File("tempDir/same.txt");
+        File onlyMaster = new File("tempDir/nested/onlyMaster.txt");
+        onlyMaster.getParentFile().mkdirs();
+        FileUtil.createFile(same.toString(), "in both branches");
+        Gitlet.main(new String[] {"add", same.toString()});
+        Gitlet.main(new String[] {"commit", "shared file"});
+        Gitlet.main(new String[] {"branch", "other"});
+        FileUtil.createFile(onlyMaster.toString(), "master only");
+        Gitlet.main(new String[] {"add", onlyMaster.toString()});
+        Gitlet.main(new String[] {"commit", "master file"});
+
+        same.setLastModified(1000);
+        Gitlet.main(new String[] {"checkout", "other"});
+        assertEquals(1000, same.lastModified()); //identical contents, never rewritten
+        assertEquals(false, onlyMaster.exists()); //other does not track it
+        assertEquals(false, onlyMaster.getParentFile().exists());
+        Gitlet.main(new String[] {"checkout", "master"});
+        assertEquals("master only", FileUtil.getText(onlyMaster.toString()));
+        assertEquals(1000, same.lastModified());
+    }
+
+    @Test
+    public void testCheckoutWritesManyFiles() {
+        Gitlet.main(new String[] {"branch", "empty"});
+        File dir = new File("tempDir");
+        for (int i = 0; i < 40; i++) {
+            File file = new File(dir, "d" + (i % 4) + "/f" + i + ".txt");
+            file.getParentFile().mkdirs();
+            FileUtil.createFile(file.toString(), "file " + i);
+        }
+        Gitlet.main(new String[] {"add", dir.toString()});
+        Gitlet.main(new String[] {"commit", "forty files"});
+        Gitlet.main(new String[] {"checkout", "empty"});
+        assertEquals(false, dir.exists());
+        Gitlet.main(new String[] {"checkout", "master"});
+        for (int i = 0; i < 40; i++) {
+            File file = new File(dir, "d" + (i % 4) + "/f" + i + ".txt");
+            assertEquals("file " + i, FileUtil.getText(file.toString()));
+        }
+    }
+
+    @Test
+    public void testCommitGraphRebuilt() {
+        File file = new File("graphed.txt");
+        FileUtil.createFile(file.toString(), "base");
+        Gitlet.main(new String[] {"add", file.toString()});
+        Gitlet.main(new String[] {"commit", "base"});
+        Gitlet.main(new String[] {"branch", "other"});
+        for (int i = 0; i < 3; i++) {
+            FileUtil.writeFile(file.toString(), "master " + i);
+            Gitlet.main(new String[] {"add", file.toString()});
+            Gitlet.main(new String[] {"commit", "master " + i});
+        }
+        File graph = new File(".gitlet/commit-graph");
+        assertEquals(true, graph.exists());
+        graph.delete(); //an older repository has none, it is built from the commits
+
+        //other has not changed the file since the split, so it gets master's version
+        Gitlet.main(new String[] {"checkout", "other"});
+        Gitlet.main(new String[] {"merge", "master"});
+        assertEquals("master 2", FileUtil.getText(file.toString()));
+        assertEquals(true, graph.exists());
+        file.delete();
+    }
+
+    @Test
+    public void testMessageIndex() throws IOException {
+        String[] messages = {"Fix crash in merge (ABC-123)", "ABC-1234: speed up log",
+                             "unrelated"};
+        for (int i = 0; i < messages.length; i++) {
+            FileUtil.createFile("indexed.txt", messages[i]);
+            Gitlet.main(new String[] {"add", "indexed.txt"});
+            Gitlet.main(new String[] {"commit", messages[i]});
+        }
+        ObjectStore objects = new ObjectStore(new File(".gitlet/objects"));
+        MessageIndex index = new MessageIndex(new File(".gitlet"),
+                                              new CommitStore(new File(".gitlet"), objects));
+        assertEquals(Arrays.asList(1), 
+                     index.find("abc-123", MessageIndex.Match.TOKEN, 3));
+        assertEquals(Arrays.asList(2, 1), 
+                     index.find("ABC-123", MessageIndex.Match.PREFIX, 3));
+        assertEquals(Arrays.asList(2), 
+                     index.find("speed up", MessageIndex.Match.SUBSTRING, 3));
+        assertEquals(Arrays.asList(3), 
+                     index.find("unrelated", MessageIndex.Match.EXACT, 3));
+        assertEquals(0, index.find("Unrelated", MessageIndex.Match.EXACT, 3).size());
+
+        //an older repository without the index is searched without writing one, find only
+        //holds the shared lock, and the next command that saves builds it
+        new File(".gitlet/message-index").delete();
+        new File(".gitlet/message-index.log").delete();
+        assertEquals("2\n", output(new String[] {"find", "-s", "speed up"}));
+        assertFalse(new File(".gitlet/message-index").exists());
+        Gitlet.main(new String[] {"branch", "indexed"});
+        assertTrue(new File(".gitlet/message-index").exists());
+        index = new MessageIndex(new File(".gitlet"),
+                                 new CommitStore(new File(".gitlet"), objects));
+        assertEquals(Arrays.asList(2), 
+                     index.find("speed up", MessageIndex.Match.SUBSTRING, 3));
+        new File("indexed.txt").delete();
+    }
+
+    @Test
+    public void testRepack() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= 30; i++) {
+            for (int line = 0; line < 20; line++) {
+                text.append("version " + i + " adds line " + line + "\n");
+            }
+            FileUtil.createFile("packed.txt", text.toString());
+            Gitlet.main(new String[] {"add", "packed.txt"});
+            Gitlet.main(new String[] {"commit", "version " + i});
+        }
+        long loose = size(new File(".gitlet/objects"));
+        Gitlet.main(new String[] {"repack"});
+        File packDir = new File(".gitlet/objects/pack");
+        assertEquals(0, new ObjectStore(new File(".gitlet/objects")).looseHashes().size());
+        assertEquals(2, packDir.list().length); //the pack and its index
+        assertArrayEquals(new String[] {"pack"}, new File(".gitlet/objects").list());
+        assertTrue(size(packDir) * 4 < loose);
+
+        //read in segments too small for any entry to fit in one, as a pack over 2 GB is
+        ObjectStore objects = new ObjectStore(new File(".gitlet/objects"));
+        Pack pack = objects.packs().get(0);
+        HashMap<String, byte[]> whole = new HashMap<String, byte[]>();
+        for (String hash: pack.hashes()) {
+            whole.put(hash, pack.read(hash, objects));
+        }
+        pack.setSegmentSize(7);
+        for (String hash: pack.hashes()) {
+            assertArrayEquals(whole.get(hash), pack.read(hash, objects));
+            assertEquals(whole.get(hash).length, pack.size(hash));
+        }
+
+        //old versions come back out of the deltas
+        Gitlet.main(new String[] {"checkout", "3", "packed.txt"});
+        assertTrue(FileUtil.getText("packed.txt").endsWith("version 3 adds line 19\n"));
+        assertFalse(FileUtil.getText("packed.txt").contains("version 4"));
+        Gitlet.main(new String[] {"checkout", "30", "packed.txt"});
+        assertEquals(text.toString(), FileUtil.getText("packed.txt"));
+
+        //new objects are loose again until the next repack folds them in
+        FileUtil.createFile("packed.txt", "after the repack");
+        Gitlet.main(new String[] {"add", "packed.txt"});
+        Gitlet.main(new String[] {"commit", "after"});
+        Gitlet.main(new String[] {"repack"});
+        assertEquals(2, packDir.list().length);
+        Gitlet.main(new String[] {"checkout", "10", "packed.txt"});
+        assertTrue(FileUtil.getText("packed.txt").endsWith("version 10 adds line 19\n"));
+        new File("packed.txt").delete();
+    }
+
+    @Test
+    public void testPackPastTwoGigabytes() throws IOException {
+        //a sparse pack whose only object starts past Integer.MAX_VALUE
+        File dir = new File("tempDir");
+        dir.mkdir();
+        byte[] contents = "far into the pack".getBytes(StandardCharsets.UTF_8);
+        Deflater deflater = new Deflater();
+        deflater.setInput(contents);
+        deflater.finish();
+        byte[] compressed = new byte[256];
+        int length = deflater.deflate(compressed);
+        deflater.end();
+        long offset = Integer.MAX_VALUE + 16L;
+        try (RandomAccessFile out = new RandomAccessFile(new File(dir, "pack-far.pack"), "rw")) {
+            out.write(Pack.MAGIC);
+            out.write(Pack.VERSION);
+            out.seek(offset);
+            out.write(Pack.WHOLE);
+            out.write(contents.length); //varints of one byte each
+            out.write(length);
+            out.write(compressed, 0, length);
+        }
+        String hash = ObjectStore.hash(new File("wug.txt"));
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(
+                new File(dir, "pack-far.idx")))) {
+            out.write(Pack.INDEX_MAGIC);
+            out.write(Pack.VERSION);
+            out.writeInt(1);
+            out.write(ObjectStore.toBytes(hash));
+            out.writeLong(offset);
+        }
+        Pack pack = new Pack(new File(dir, "pack-far.idx"));
+        assertEquals(contents.length, pack.size(hash));
+        assertArrayEquals(contents, pack.read(hash, null));
+    }
+
+    @Test
+    public void testGarbageCollection() throws IOException {
+        FileUtil.createFile("kept.txt", "on master");
+        Gitlet.main(new String[] {"add", "kept.txt"});
+        Gitlet.main(new String[] {"commit", "master commit"});
+        Gitlet.main(new String[] {"branch", "doomed"});
+        Gitlet.main(new String[] {"checkout", "doomed"});
+        FileUtil.createFile("doomed.txt", "only on the removed branch");
+        Gitlet.main(new String[] {"add", "doomed.txt"});
+        Gitlet.main(new String[] {"commit", "doomed commit"});
+        File doomed = stored(new File("doomed.txt"));
+        Gitlet.main(new String[] {"checkout", "master"});
+        Gitlet.main(new String[] {"rm-branch", "doomed"});
+
+        //still within the grace period
+        Gitlet.main(new String[] {"gc"});
+        assertTrue(doomed.exists());
+
+        Gitlet.main(new String[] {"gc", "--grace", "-1"});
+        assertFalse(doomed.exists());
+        assertTrue(stored(new File("kept.txt")).exists());
+        assertEquals("on master", FileUtil.getText("kept.txt"));
+        Gitlet.main(new String[] {"checkout", "1", "kept.txt"});
+        assertEquals("on master", FileUtil.getText("kept.txt"));
+
+        //packed objects are swept as well
+        Gitlet.main(new String[] {"branch", "doomed"});
+        Gitlet.main(new String[] {"checkout", "doomed"});
+        FileUtil.createFile("doomed.txt", "packed and then removed");
+        Gitlet.main(new String[] {"add", "doomed.txt"});
+        Gitlet.main(new String[] {"commit", "packed commit"});
+        String packed = ObjectStore.hash(new File("doomed.txt"));
+        Gitlet.main(new String[] {"repack"});
+        Gitlet.main(new String[] {"checkout", "master"});
+        Gitlet.main(new String[] {"rm-branch", "doomed"});
+        ObjectStore objects = new ObjectStore(new File(".gitlet/objects"));
+        assertTrue(objects.contains(packed));
+        Gitlet.main(new String[] {"gc", "--grace", "-1"});
+        objects = new ObjectStore(new File(".gitlet/objects"));
+        assertFalse(objects.contains(packed));
+        assertTrue(objects.contains(ObjectStore.hash(new File("kept.txt"))));
+        Gitlet.main(new String[] {"reset", "1"});
+        assertEquals("on master", FileUtil.getText("kept.txt"));
+        new File("kept.txt").delete();
+        new File("doomed.txt").delete();
+    }
+
+    @Test
+    public void testLargeFilesStoredInChunks() throws IOException {
+        System.setProperty("gitlet.chunkThreshold", "100000");
+        try {
+            byte[] contents = new byte[2 * 1024 * 1024];
+            new java.util.Random(61).nextBytes(contents);
+            File large = new File("large.bin");
+            java.nio.file.Files.write(large.toPath(), contents);
+            Gitlet.main(new String[] {"add", "large.bin"});
+            Gitlet.main(new String[] {"commit", "large file"});
+            long before = size(new File(".gitlet/objects"));
+            assertTrue(before < contents.length * 11 / 10);
+
+            //an edit in the middle stores a chunk or two, not another 2 MB
+            byte[] edited = contents.clone();
+            for (int i = 0; i < 100; i++) {
+                edited[1000000 + i] = 0;
+            }
+            java.nio.file.Files.write(large.toPath(), edited);
+            Gitlet.main(new String[] {"add", "large.bin"});
+            Gitlet.main(new String[] {"commit", "edited"});
+            assertTrue(size(new File(".gitlet/objects")) - before < 4 * Chunker.MAX);
+            //stored under the hash of the whole file, like a small one
+            ObjectStore objects = new ObjectStore(new File(".gitlet/objects"));
+            assertTrue(objects.chunks(ObjectStore.hash(large)).size() > 4);
+
+            Gitlet.main(new String[] {"checkout", "1", "large.bin"});
+            assertTrue(Arrays.equals(contents, java.nio.file.Files.readAllBytes(large.toPath())));
+            Gitlet.main(new String[] {"repack"});
+            Gitlet.main(new String[] {"gc", "--grace", "-1"});
+            Gitlet.main(new String[] {"checkout", "2", "large.bin"});
+            assertTrue(Arrays.equals(edited, java.nio.file.Files.readAllBytes(large.toPath())));
+            large.delete();
+        } finally {
+            System.clearProperty("gitlet.chunkThreshold");
+        }
+    }
+
+    @Test
+    public void testThreeWayMerge() {
+        String base = "one\ntwo\nthree\nfour\nfive\nsix\nseven\neight\n";
+        FileUtil.createFile("lines.txt", base);
+        Gitlet.main(new String[] {"add", "lines.txt"});
+        Gitlet.main(new String[] {"commit", "eight lines"});
+        Gitlet.main(new String[] {"branch", "other"});
+        FileUtil.createFile("lines.txt", base.replace("two", "TWO"));
+        Gitlet.main(new String[] {"add", "lines.txt"});
+        Gitlet.main(new String[] {"commit", "changed two"});
+        Gitlet.main(new String[] {"checkout", "other"});
+        FileUtil.createFile("lines.txt", base.replace("seven", "SEVEN"));
+        Gitlet.main(new String[] {"add", "lines.txt"});
+        Gitlet.main(new String[] {"commit", "changed seven"});
+
+        //separate regions merge cleanly
+        Gitlet.main(new String[] {"merge", "master"});
+        assertEquals(base.replace("two", "TWO").replace("seven", "SEVEN"),
+                     FileUtil.getText("lines.txt"));
+        assertFalse(new File("lines.txt.conflicted").exists());
+
+        //the same line changed on both sides is a conflict
+        FileUtil.createFile("lines.txt", base.replace("four", "4 on other"));
+        Gitlet.main(new String[] {"add", "lines.txt"});
+        Gitlet.main(new String[] {"commit", "four on other"});
+        Gitlet.main(new String[] {"checkout", "master"});
+        FileUtil.createFile("lines.txt", base.replace("four", "4 on master"));
+        Gitlet.main(new String[] {"add", "lines.txt"});
+        Gitlet.main(new String[] {"commit", "four on master"});
+        Gitlet.main(new String[] {"merge", "other"});
+        assertEquals(base.replace("four", "4 on master"), FileUtil.getText("lines.txt"));
+        assertEquals("one\ntwo\nthree\n<<<<<<< master\n4 on master\n=======\n4 on other\n"
+                     + ">>>>>>> other\nfive\nsix\nseven\neight\n",
+                     FileUtil.getText("lines.txt.conflicted"));
+        new File("lines.txt").delete();
+        new File("lines.txt.conflicted").delete();
+    }
+
+    @Test
+    public void testRebaseReplaysChanges() {
+        for (String name: new String[] {"a", "b", "c", "d"}) {
+            FileUtil.createFile(name + ".txt", name);
+            Gitlet.main(new String[] {"add", name + ".txt"});
+        }
+        Gitlet.main(new String[] {"commit", "four files"}); //1
+        Gitlet.main(new String[] {"branch", "upstream"});
+        FileUtil.createFile("b.txt", "b on master");
+        Gitlet.main(new String[] {"add", "b.txt"});
+        FileUtil.createFile("d.txt", "d on master");
+        Gitlet.main(new String[] {"add", "d.txt"});
+        Gitlet.main(new String[] {"commit", "b and d on master"}); //2
+        Gitlet.main(new String[] {"rm", "c.txt"});
+        Gitlet.main(new String[] {"commit", "no c on master"}); //3
+        Gitlet.main(new String[] {"checkout", "upstream"});
+        FileUtil.createFile("a.txt", "a upstream");
+        Gitlet.main(new String[] {"add", "a.txt"});
+        FileUtil.createFile("d.txt", "d upstream");
+        Gitlet.main(new String[] {"add", "d.txt"});
+        Gitlet.main(new String[] {"commit", "a and d upstream"}); //4
+        Gitlet.main(new String[] {"checkout", "master"});
+        Gitlet.main(new String[] {"rebase", "upstream"}); //5 and 6
+
+        assertEquals("a upstream", FileUtil.getText("a.txt"));
+        assertEquals("b on master", FileUtil.getText("b.txt"));
+        assertFalse(new File("c.txt").exists());
+        assertEquals("d on master", FileUtil.getText("d.txt"));
+        //the first replayed commit still has c
+        Gitlet.main(new String[] {"checkout", "5", "c.txt"});
+        assertEquals("c", FileUtil.getText("c.txt"));
+        Gitlet.main(new String[] {"checkout", "5", "a.txt"});
+        assertEquals("a upstream", FileUtil.getText("a.txt"));
+        for (String name: new String[] {"a", "b", "c", "d"}) {
+            new File(name + ".txt").delete();
+        }
+    }
+
+    @Test
+    public void testDiff() {
+        FileUtil.createFile("diffed.txt", "one\ntwo\nthree\n");
+        FileUtil.createFile("same.txt", "unchanged");
+        Gitlet.main(new String[] {"add", "diffed.txt"});
+        Gitlet.main(new String[] {"add", "same.txt"});
+        Gitlet.main(new String[] {"commit", "before"});
+        FileUtil.createFile("diffed.txt", "one\n2\nthree\n");
+        Gitlet.main(new String[] {"add", "diffed.txt"});
+        Gitlet.main(new String[] {"commit", "after"});
+
+        String expected = "diff --git a/diffed.txt b/diffed.txt\n--- a/diffed.txt\n"
+                          + "+++ b/diffed.txt\n@@ -1,3 +1,3 @@\n one\n-two\n+2\n three\n";
+        assertEquals(expected, output(new String[] {"diff", "1", "2"}));
+        assertEquals("", output(new String[] {"diff", "1", "2", "--", "same.txt"}));
+        //the working directory against the head
+        FileUtil.createFile("same.txt", "changed");
+        assertEquals("diff --git a/same.txt b/same.txt\n--- a/same.txt\n+++ b/same.txt\n"
+                     + "@@ -1 +1 @@\n-unchanged\n\\ No newline at end of file\n+changed\n"
+                     + "\\ No newline at end of file\n", output(new String[] {"diff"}));
+        new File("diffed.txt").delete();
+        new File("same.txt").delete();
+    }
+
+    @Test
+    public void testStatusScansWorkingTree() {
+        new File("status/build").mkdirs();
+        FileUtil.createFile("status/kept.txt", "kept");
+        FileUtil.createFile("status/edited.txt", "edited");
+        FileUtil.createFile("status/gone.txt", "gone");
+        Gitlet.main(new String[] {"add", "status"});
+        Gitlet.main(new String[] {"commit", "three files"});
+        FileUtil.createFile("status/edited.txt", "edited again");
+        new File("status/gone.txt").delete();
+        FileUtil.createFile("status/new.txt", "new");
+        FileUtil.createFile("status/build/out.txt", "ignored");
+        FileUtil.createFile("status/debug.log", "ignored");
+        FileUtil.createFile(".gitletignore", "# build output\nbuild/\n*.log\n");
+        try {
+            String status = output(new String[] {"status"});
+            String modifications = status.substring(
+                status.indexOf("=== Modifications Not Staged For Commit ==="),
+                status.indexOf("=== Untracked Files ==="));
+            assertEquals("=== Modifications Not Staged For Commit ===\n"
+                         + "status/edited.txt (modified)\nstatus/gone.txt (deleted)\n\n",
+                         modifications);
+            String untracked = status.substring(status.indexOf("=== Untracked Files ==="));
+            assertTrue(untracked.contains("\nstatus/new.txt\n"));
+            assertFalse(untracked.contains("out.txt"));
+            assertFalse(untracked.contains("debug.log"));
+            assertFalse(untracked.contains(".gitlet/"));
+
+            //staged changes are only listed as staged
+            Gitlet.main(new String[] {"add", "status/edited.txt"});
+            Gitlet.main(new String[] {"add", "status/new.txt"});
+            status = output(new String[] {"status"});
+            assertFalse(status.contains("edited.txt (modified)"));
+            assertFalse(status.substring(status.indexOf("=== Untracked Files ===")).contains("new.txt"));
+        } finally {
+            new File(".gitletignore").delete();
+            FileUtil.recursiveDelete(new File("status"));
+        }
+    }
+
+    @Test
+    public void testTrace() throws IOException {
+        File trace = new File(".gitlet/trace.jsonl");
+        Gitlet.main(new String[] {"add", "wug.txt"});
+        assertFalse(trace.exists());
+        Gitlet.main(new String[] {"--trace", "commit", "traced"});
+        Gitlet.main(new String[] {"--trace", "log"});
+        String[] lines = FileUtil.getText(trace.getPath()).split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"time\":"));
+        assertTrue(lines[0].contains("\"command\":\"commit\",\"outcome\":\"ok\""));
+        assertTrue(lines[0].contains("\"load\":"));
+        assertTrue(lines[0].contains("\"save\":"));
+        assertTrue(lines[0].contains("\"commitsWritten\":1"));
+        assertFalse(lines[0].contains("\"objectsWritten\":0"));
+        assertTrue(lines[1].contains("\"command\":\"log\""));
+        assertTrue(lines[1].contains("\"bytesWritten\":0"));
+        assertTrue(lines[1].endsWith("}"));
+        assertTrue(output(new String[] {"log"}).contains("traced"));
+
+        //failures that are only printed count too
+        Gitlet.main(new String[] {"--trace", "commit", "nothing staged"});
+        lines = FileUtil.getText(trace.getPath()).split("\n");
+        assertTrue(lines[2].contains("\"outcome\":\"GitletException$Rejected: No changes added"));
+    }
+
+    @Test
+    public void testJournalReplaysInterruptedSave() throws IOException {
+        File journalFile = new File(".gitlet/journal");
+        Gitlet.main(new String[] {"add", "wug.txt"});
+        Gitlet.main(new String[] {"commit", "journaled"});
+        assertFalse(journalFile.exists());
+
+        FileUtil.createFile("journal.txt", "hello world");
+        try {
+            //durable but not written, as after a crash
+            Journal journal = new Journal(new File(".gitlet"));
+            journal.write(new File("journal.txt"), 6, "there".getBytes());
+            journal.prepare();
+            assertEquals("hello world", FileUtil.getText("journal.txt"));
+            assertTrue(journalFile.exists());
+            assertTrue(output(new String[] {"log"}).contains("journaled"));
+            assertEquals("hello there", FileUtil.getText("journal.txt"));
+            assertFalse(journalFile.exists());
+
+            //a journal that was cut short is dropped
+            FileUtil.createFile(".gitlet/journal", "GLJN garbage");
+            assertTrue(output(new String[] {"log"}).contains("journaled"));
+            assertFalse(journalFile.exists());
+            assertEquals("hello there", FileUtil.getText("journal.txt"));
+        } finally {
+            new File("journal.txt").delete();
+        }
+    }
+
+    @Test
+    public void testRepositoryLock() throws IOException, InterruptedException {
+        Gitlet.main(new String[] {"add", "wug.txt"});
+        Gitlet.main(new String[] {"commit", "locked"});
+
+        //commands that only look run while others look
+        RepoLock lock = RepoLock.acquire(Gitlet.CURRENT, true);
+        try {
+            Process log = gitlet("log");
+            assertTrue(log.waitFor(30, TimeUnit.SECONDS));
+            String printed = new String(log.getInputStream().readAllBytes());
+            assertFalse(printed.contains("Waiting"));
+            assertTrue(printed.contains("locked"));
+
+            //the rest wait for them
+            Process branch = gitlet("branch", "waited");
+            assertFalse(branch.waitFor(1, TimeUnit.SECONDS));
+            lock.close();
+            assertTrue(branch.waitFor(30, TimeUnit.SECONDS));
+            assertTrue(new String(branch.getInputStream().readAllBytes()).contains("Waiting"));
+        } finally {
+            lock.close();
+        }
+        assertTrue(output(new String[] {"status"}).contains("waited"));
+    }
+
+    @Test
+    public void testRepositoryApi() throws IOException, GitletException {
+        PrintStream original = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        ByteArrayOutputStream messages = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true));
+        try {
+            Repository repo = Repository.open(Paths.get("."));
+            repo.setOutput(new PrintStream(messages, true));
+            repo.add("wug.txt");
+            CommitInfo c = repo.commit("from a program");
+            assertEquals(1, c.getId());
+            assertEquals(0, c.getParent());
+            assertEquals("from a program", repo.log(5).get(0).getMessage());
+            assertEquals(2, repo.log(5).size());
+            assertEquals(1, repo.find("from a program").get(0).getId());
+            repo.add("wug.txt");
+            assertEquals("File has not been modified since the last commit.\n", messages.toString());
+            try {
+                repo.commit("nothing staged");
+                fail("committed nothing");
+            } catch (GitletException.Rejected e) {
+                assertEquals("No changes added to the commit.", e.getMessage());
+            }
+            try {
+                repo.checkout("no such branch");
+                fail("checked out a missing branch");
+            } catch (GitletException.NotFound e) {
+                assertTrue(e.getMessage().startsWith("File does not exist"));
+            }
+
+            //commands run in between are seen
+            Gitlet.main(new String[] {"branch", "other"});
+            assertTrue(repo.status().getBranches().contains("other"));
+            assertEquals("master", repo.status().getCurrentBranch());
+
+            repo.setConfirmationPolicy(new ConfirmationPolicy() {
+                public boolean confirm(String warning) {
+                    return false;
+                }
+
+                public Replay replay(Commit commit, boolean canSkip) {
+                    return Replay.CONTINUE;
+                }
+
+                public String message(Commit commit) {
+                    return commit.getMessage();
+                }
+            });
+            try {
+                repo.checkout("other");
+                fail("checked out without confirmation");
+            } catch (GitletException.Aborted e) {
+                assertEquals("master", repo.status().getCurrentBranch());
+            }
+            repo.setConfirmationPolicy(ConfirmationPolicy.YES);
+            assertEquals(1, repo.checkout("other").getId());
+            assertEquals("", printed.toString());
+        } finally {
+            System.setOut(original);
+        }
+        assertTrue(output(new String[] {"status"}).contains("*other"));
+    }
+
+    @Test
+    public void testRepositoryInAnotherDirectory() throws IOException, GitletException {
+        //opened where it is, without changing the current directory
+        File dir = new File("tempDir");
+        dir.mkdir();
+        Repository repo = Repository.init(dir.toPath());
+        File file = new File(dir, "sub/elsewhere.txt");
+        file.getParentFile().mkdirs();
+        FileUtil.writeFile(file.getPath(), "first");
+        repo.add("sub/elsewhere.txt");
+        assertEquals(1, repo.commit("elsewhere").getId());
+        FileUtil.writeFile(file.getPath(), "second");
+        assertEquals(Arrays.asList(new File("sub/elsewhere.txt")), repo.status().getModified());
+        repo.checkout(1, "sub/elsewhere.txt");
+        assertEquals("first", FileUtil.getText(file.getPath()));
+        assertTrue(repo.status().isClean());
+
+        repo.branch("other");
+        repo.checkout("other");
+        FileUtil.createFile(new File(dir, "sub/other.txt").getPath(), "other");
+        repo.add("sub");
+        repo.commit("on other");
+        repo.checkout("master");
+        assertFalse(new File(dir, "sub/other.txt").exists());
+        assertTrue(file.exists());
+        assertFalse(new File("sub").exists());
+
+        //the repository in the current directory is another one
+        assertEquals(1, Repository.open(Paths.get(".")).log(5).size());
+        assertEquals("on other", Repository.open(dir.toPath()).find("on other").get(0)
+                                           .getMessage());
+        try {
+            Repository.init(dir.toPath());
+            fail("initialized twice");
+        } catch (GitletException.Rejected e) {
+            assertTrue(new File(dir, ".gitlet/state").exists());
+        }
+    }
+
+    //gitlet run in a process of its own
+    private static Process gitlet(String... args) throws IOException {
+        String[] command = new String[args.length + 4];
+        command[0] = System.getProperty("java.home") + "/bin/java";
+        command[1] = "-cp";
+        command[2] = System.getProperty("java.class.path");
+        command[3] = "Gitlet";
+        System.arraycopy(args, 0, command, 4, args.length);
+        return new ProcessBuilder(command).redirectErrorStream(true).start();
+    }
+
+    //what running the command prints
+    private static String output(String[] command) {
+        PrintStream original = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true));
+        try {
+            Gitlet.main(command);
+        } finally {
+            System.setOut(original);
+        }
+        return captured.toString();
+    }
+
+    private static long size(File dir) {
+        long size = 0;
+        for (File f : dir.listFiles()) {
+            size += f.isDirectory() ? size(f) : f.length();
+        }
+        return size;
+    }
+
+    //where the committed contents of a file end up in the object store
+    private static File stored(File file) throws IOException {
+        return new ObjectStore(new File(".gitlet/objects")).getFile(ObjectStore.hash(file));
+    }
+
+    private static int countObjectsStartingWith(File dir, String prefix) {
+        int count = 0;
+        for (File f : dir.listFiles()) {
+            if (f.isDirectory()) {
+                count += countObjectsStartingWith(f, prefix);
+            } else if (FileUtil.getText(f.toString()).startsWith(prefix)) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    private static int countObjects(File dir, String contents) {
+        int count = 0;
+        for (File f : dir.listFiles()) {
+            if (f.isDirectory()) {
+                count += countObjects(f, contents);
+            } else if (FileUtil.getText(f.toString()).equals(contents)) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
     public static void main(String[] args) {
         jh61b.junit.textui.runClasses(GitTest.class);
     }
@@ -1,24 +1,78 @@
+import java.io.File;
+import java.io.IOException;
 
 public class Gitlet {
+    static final File CURRENT = new File("."); //the command line works on this repository
+
     public static void main(String[] args) {
         try {
             if (args.length == 0) {
                 System.out.println("Please enter a command");
+                return;
+            }
+            if (args[0].equals("daemon")) {
+                if (args.length == 1) {
+                    Daemon.serve();
+                } else if (!Daemon.forward(args)) {
+                    System.out.println("No gitlet daemon is running.");
+                }
+                return;
             }
-            String command = args[0];
-            String[] tokens = new String[args.length - 1];
-            System.arraycopy(args, 1, tokens, 0, tokens.length);
-            Git g = Serialize.load(); //load gitlet if there is one
-            if (command.equals("init")) {
-                if (g != null) {
-                    System.out.println("A gitlet version control system already 
-                                        exists in the current directory.");
+            if (Daemon.forward(args)) {
+                return; //a daemon already has the repository loaded, and traces there
+            }
+            args = Trace.configure(args);
+            if (args.length == 0) {
+                System.out.println("Please enter a command");
+                return;
+            }
+            Trace.start(args[0]);
+            Throwable failure = null;
+            try (RepoLock lock = RepoLock.acquire(CURRENT, args[0])) {
+                Git g = Serialize.load(CURRENT); //load gitlet if there is one
+                long executing = Trace.begin();
+                g = execute(g, args);
+                Trace.end("execute", executing);
+                if (lock.isShared()) {
+                    Serialize.saveCaches(g); //nothing else changed, and others may be reading
                 } else {
-                    g = new Git();
+                    Serialize.serializeGit(g); //always serialize after a command
                 }
-            } else if (g == null) {
-                System.out.println("You must initialize first");
+            } catch (Exception e) {
+                failure = e;
+                throw e;
+            } finally {
+                Trace.finish(failure);
+            }
+        } catch (Exception e) {
+            System.out.println(e);
+        }
+    }
+
+    //runs one command against g (null if there is no repository yet) and returns the
+    //repository afterwards, which init creates in the current directory
+    public static Git execute(Git g, String[] args) throws IOException {
+        return execute(CURRENT, g, args);
+    }
+
+    //the same, with init creating the repository in root
+    public static Git execute(File root, Git g, String[] args) throws IOException {
+        String command = args[0];
+        String[] tokens = new String[args.length - 1];
+        System.arraycopy(args, 1, tokens, 0, tokens.length);
+        if (command.equals("batch")) {
+            return Batch.run(g, tokens); //may start with init, so g can still be null
+        } else if (command.equals("init")) {
+            if (g != null) {
+                System.out.println("A gitlet version control system already "
+                                   + "exists in the current directory.");
             } else {
+                g = new Git(root);
+            }
+        } else if (g == null) {
+            System.out.println("You must initialize first");
+        } else {
+            try {
                 switch (command) {                     
                     case "add":
                         g.add(tokens); 
@@ -30,7 +84,7 @@ public class Gitlet {
                         g.removeFile(tokens);                       
                         break;
                     case "log":
-                        g.log();
+                        g.log(tokens);
                         break;
                     case "global-log":
                         g.globalLog();
@@ -38,6 +92,15 @@ public class Gitlet {
                     case "find":
                         g.findIds(tokens);
                         break;
+                    case "diff":
+                        g.diff(tokens);
+                        break;
+                    case "gc":
+                        g.gc(tokens);
+                        break;
+                    case "repack":
+                        g.repack();
+                        break;
                     case "status":
                         g.getStatus();
                         break;
@@ -65,11 +128,12 @@ public class Gitlet {
                     default:
                         System.out.println("Invalid command.");  
                 }
+            } catch (GitletException e) {
+                Trace.failed(e);
+                System.out.println(e.getMessage()); //the repository is still saved
             }
-            Serialize.serializeGit(g); //always serialize after a command
-        } catch (Exception e) {
-            System.out.println(e);
         }
+        return g;
     }
 
 }
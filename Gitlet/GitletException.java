@@ -0,0 +1,49 @@
+//A command that cannot do what it was asked: bad arguments, a commit or branch that does
+//not exist, a repository it does not apply to, or a warning that was answered no. Unlike
+//an IOException the repository is fine afterwards. Gitlet prints the message, which is
+//what gitlet has always printed for it; programs using Repository can catch the subclass
+//they care about instead.
+
+public class GitletException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    public GitletException(String message) {
+        super(message);
+    }
+
+    //the arguments are missing or malformed
+    public static class Usage extends GitletException {
+        private static final long serialVersionUID = 1L;
+
+        public Usage(String message) {
+            super(message);
+        }
+    }
+
+    //no commit, branch or file by that name
+    public static class NotFound extends GitletException {
+        private static final long serialVersionUID = 1L;
+
+        public NotFound(String message) {
+            super(message);
+        }
+    }
+
+    //the repository is not in a state the command applies to, e.g. nothing is staged
+    public static class Rejected extends GitletException {
+        private static final long serialVersionUID = 1L;
+
+        public Rejected(String message) {
+            super(message);
+        }
+    }
+
+    //the ConfirmationPolicy did not let the command touch the working directory
+    public static class Aborted extends GitletException {
+        private static final long serialVersionUID = 1L;
+
+        public Aborted(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+
+
+//The patterns in .gitletignore, one per line, for status and add. Blank lines and lines
+//starting with # are skipped. A pattern is a glob (*, ?, [abc], ** across directories):
+//without a / it matches a file or directory of that name anywhere, with one it matches
+//the path from the top of the repository. A trailing / matches directories only. Anything
+//inside an ignored directory is ignored with it and never listed. .gitlet always is.
+
+public class IgnoreRules {
+    private static class Rule {
+        private PathMatcher matcher;
+        private boolean byName; //against the last name only, not the whole path
+        private boolean directoriesOnly;
+    }
+
+    private ArrayList<Rule> rules = new ArrayList<Rule>();
+
+    //file is usually .gitletignore, which may not exist
+    public IgnoreRules(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        for (String line: Files.readAllLines(file.toPath())) {
+            String pattern = line.trim();
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                continue;
+            }
+            Rule r = new Rule();
+            r.directoriesOnly = pattern.endsWith("/");
+            if (r.directoriesOnly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            r.byName = !pattern.contains("/");
+            r.matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            rules.add(r);
+        }
+    }
+
+    //path is relative to the top of the repository
+    public boolean isIgnored(Path path, boolean isDirectory) {
+        Path name = path.getFileName();
+        if (name == null) {
+            return false;
+        }
+        if (name.toString().equals(".gitlet")) {
+            return true;
+        }
+        for (Rule r: rules) {
+            if ((isDirectory || !r.directoriesOnly)
+                && r.matcher.matches(r.byName ? name : path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
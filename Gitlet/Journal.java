@@ -0,0 +1,230 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.zip.CRC32;
+
+
+//A write-ahead journal that makes saving a command's changes all or nothing. The commit
+//log and its index, the commit graph, the message log and the state file are not written
+//directly. Their new bytes are collected here and commit() then:
+//
+//  1. writes them all to .gitlet/journal.tmp and syncs it, together with every object
+//     the command stored, all at once on a pool of threads
+//  2. renames it to .gitlet/journal and syncs .gitlet: the changes are now durable
+//  3. writes the changes where they belong, syncs those files and deletes the journal
+//
+//A crash before step 2 leaves the files as they were (new objects nobody points at are
+//harmless, gc removes them), and one after it leaves the journal behind, which the next
+//command plays again (recover) before it reads anything. Playing it twice does no harm,
+//since every change is a write of given bytes at a given offset.
+//
+//Every save is one journal, so a batch, which only saves at the end or at a checkpoint,
+//makes all of its commits durable with the same few syncs (group commit). The syncs of
+//one step run at the same time, so the file system can fold them into one of its own.
+//-Dgitlet.sync=false skips syncing: saves stay all or nothing after a crash of gitlet,
+//just not after one of the machine.
+//
+//The journal is a header, a varint count and per change the path, a flag byte (1 to cut
+//the file off after the change), the varint offset, the varint length and the bytes. A
+//4 byte CRC-32 of everything before it ends the file; a journal without a good one was
+//never renamed into place and is dropped.
+
+public class Journal {
+    private static final byte[] MAGIC = {'G', 'L', 'J', 'N'};
+    private static final int VERSION = 1;
+    private static final boolean SYNC = !"false".equals(System.getProperty("gitlet.sync"));
+    private static final int SYNC_THREADS = 16; //syncs wait on the disk, not the processor
+
+    private static class Change {
+        private File file;
+        private long position;
+        private byte[] bytes;
+        private boolean truncate;
+    }
+
+    private File dir;
+    private ArrayList<Change> changes = new ArrayList<Change>();
+    private LinkedHashSet<File> created = new LinkedHashSet<File>();
+
+    //dir is the .gitlet directory the journal goes in
+    public Journal(File dir) {
+        this.dir = dir;
+    }
+
+    //bytes to write into file at position when the journal commits
+    public void write(File file, long position, byte[] bytes) {
+        add(file, position, bytes, false);
+    }
+
+    //the same, and file ends where bytes do
+    public void writeAndTruncate(File file, long position, byte[] bytes) {
+        add(file, position, bytes, true);
+    }
+
+    //files already written in full, like new objects, to sync before the journal commits
+    public void created(Collection<File> files) {
+        created.addAll(files);
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty() && created.isEmpty();
+    }
+
+    public void commit() throws IOException {
+        if (isEmpty()) {
+            return;
+        }
+        prepare();
+        apply(changes);
+        new File(dir, "journal").delete();
+        changes.clear();
+        created.clear();
+    }
+
+    //steps 1 and 2 of commit: afterwards the changes are durable but not written yet, as
+    //if gitlet had crashed right there
+    public void prepare() throws IOException {
+        File temp = new File(dir, "journal.tmp");
+        File journal = new File(dir, "journal");
+        Files.write(temp.toPath(), encode(changes));
+        Trace.opened(1);
+        Trace.wrote(temp.length());
+        LinkedHashSet<File> durable = new LinkedHashSet<File>(created);
+        for (File file: created) {
+            durable.add(file.getParentFile()); //for the rename that put it there
+        }
+        durable.add(temp);
+        sync(durable);
+        Files.move(temp.toPath(), journal.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        sync(dir);
+    }
+
+    //plays a journal a crash left behind, if there is one. Called before anything is read
+    public static void recover(File dir) throws IOException {
+        new File(dir, "journal.tmp").delete(); //never committed
+        File journal = new File(dir, "journal");
+        if (!journal.exists()) {
+            return;
+        }
+        ArrayList<Change> changes = decode(Files.readAllBytes(journal.toPath()));
+        if (changes != null) {
+            apply(changes);
+        }
+        journal.delete();
+    }
+
+    private void add(File file, long position, byte[] bytes, boolean truncate) {
+        Change c = new Change();
+        c.file = file;
+        c.position = position;
+        c.bytes = bytes;
+        c.truncate = truncate;
+        changes.add(c);
+    }
+
+    //writes the changes in order and syncs the files they went to
+    private static void apply(ArrayList<Change> changes) throws IOException {
+        LinkedHashSet<File> changed = new LinkedHashSet<File>();
+        for (Change c: changes) {
+            try (FileChannel out = FileChannel.open(c.file.toPath(), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.WRITE)) {
+                ByteBuffer bytes = ByteBuffer.wrap(c.bytes);
+                long position = c.position;
+                while (bytes.hasRemaining()) {
+                    position += out.write(bytes, position);
+                }
+                if (c.truncate) {
+                    out.truncate(position);
+                }
+            }
+            Trace.opened(1);
+            Trace.wrote(c.bytes.length);
+            changed.add(c.file);
+        }
+        sync(changed);
+    }
+
+    //syncs the files (and directories), all at the same time. Nothing without gitlet.sync
+    public static void sync(Collection<File> files) throws IOException {
+        if (SYNC) {
+            Parallel.forEach(files, SYNC_THREADS, file -> sync(file));
+        }
+    }
+
+    private static void sync(File file) throws IOException {
+        if (!SYNC) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+            Trace.synced();
+        } catch (IOException e) {
+            if (!file.isDirectory()) {
+                throw e; //directories cannot be opened on every platform
+            }
+        }
+    }
+
+    private static byte[] encode(ArrayList<Change> changes) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        Varint.write(out, changes.size());
+        for (Change c: changes) {
+            Varint.writeString(out, c.file.getPath());
+            out.writeByte(c.truncate ? 1 : 0);
+            Varint.write(out, c.position);
+            Varint.write(out, c.bytes.length);
+            out.write(c.bytes);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        return bytes.toByteArray();
+    }
+
+    //null if the journal is cut short or damaged
+    private static ArrayList<Change> decode(byte[] journal) {
+        if (journal.length < 4) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(journal, 0, journal.length - 4);
+        int expected = ByteBuffer.wrap(journal, journal.length - 4, 4).getInt();
+        if ((int) crc.getValue() != expected) {
+            return null;
+        }
+        ArrayList<Change> changes = new ArrayList<Change>();
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(journal, 0,
+                                                                              journal.length - 4));
+            Serialize.readHeader(in, MAGIC, VERSION);
+            int count = Varint.readInt(in);
+            for (int i = 0; i < count; i++) {
+                Change c = new Change();
+                c.file = new File(Varint.readString(in));
+                c.truncate = in.readByte() == 1;
+                c.position = Varint.read(in);
+                c.bytes = new byte[Varint.readInt(in)];
+                in.readFully(c.bytes);
+                changes.add(c);
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,436 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+//An inverted index of commit messages for find. Every three characters in a (lowercased)
+//message are a trigram, and message-index maps each trigram to the ids of the commits
+//whose message has it. A query is looked up by intersecting the lists of its trigrams,
+//and only those few commits are read to check that they really match. Queries shorter
+//than a trigram are checked against every commit.
+//
+//Committing only appends the new commits' ids and messages to message-index.log, without
+//reading anything. find reads that log directly, but only holds the shared lock (see
+//RepoLock), so it never writes: once the log gets long, the next command that changes the
+//repository folds it into message-index after saving.
+//
+//message-index is a header, the number of commits it covers (ids 0 up to it), the number
+//of trigrams and then a table sorted by trigram with, for each, the trigram's three chars
+//packed into 8 bytes, the offset of its ids, how many there are and the last one. The
+//ids follow the table as varints, the first as is and the rest as the gap to the one
+//before. message-index.log is a header and then a varint id and message per commit.
+
+public class MessageIndex {
+    //how find compares a query to a message. All but EXACT ignore case
+    public enum Match { EXACT, TOKEN, PREFIX, SUBSTRING }
+
+    private static final byte[] MAGIC = {'G', 'L', 'M', 'I'};
+    private static final byte[] LOG_MAGIC = {'G', 'L', 'M', 'L'};
+    private static final int VERSION = 1;
+    private static final int HEADER = 5;
+    private static final int ENTRY = 24;
+    private static final int FOLD_AT = 256 * 1024; //bytes of log kept before folding them in
+    private static final int FOLD_CHUNK = 65536; //commits folded in at a time
+
+    private File file;
+    private File logFile;
+    private CommitStore commits;
+    private ByteBuffer map; //null until loaded
+    private int covered;
+    private int trigrams;
+
+    public MessageIndex(File gitletDir, CommitStore commits) {
+        this.file = new File(gitletDir, "message-index");
+        this.logFile = new File(gitletDir, "message-index.log");
+        this.commits = commits;
+    }
+
+    //an empty index for a new repository, so its commits are logged from the first one
+    public void create() throws IOException {
+        writeIndex(new TreeMap<Long, ArrayList<Integer>>(), 0);
+    }
+
+    //called when commits are saved, the entries are written when journal commits.
+    //Repositories whose index has not been built yet are left alone, find builds it from
+    //the commit log the first time
+    public void append(Collection<Commit> saved, Journal journal) throws IOException {
+        if (saved.isEmpty() || !file.exists()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (!logFile.exists()) {
+            out.write(LOG_MAGIC);
+            out.writeByte(VERSION);
+        }
+        for (Commit c: saved) {
+            Varint.write(out, c.getId());
+            Varint.writeString(out, c.getMessage());
+        }
+        journal.write(logFile, logFile.exists() ? logFile.length() : 0, bytes.toByteArray());
+    }
+
+    //folds message-index.log into message-index once it is long, and builds message-index
+    //for an older repository that has none. Only under the exclusive lock, after the
+    //commits up to lastId are saved
+    public void foldIfLong(int lastId) throws IOException {
+        if (file.exists() && logFile.length() <= FOLD_AT) {
+            return;
+        }
+        map = null; //a fold by another process may have replaced it since
+        if (file.exists()) {
+            fold(recent(lastId), lastId);
+        } else {
+            load(); //build it from the commit log
+            fold(new TreeMap<Integer, String>(), lastId);
+        }
+    }
+
+    //ids of the commits up to lastId whose message matches query, newest first. Without
+    //message-index every commit is read from the commit log, as recent
+    public ArrayList<Integer> find(String query, Match match, int lastId) throws IOException {
+        TreeMap<Integer, String> recent = recent(lastId);
+
+        TreeMap<Integer, Boolean> found = new TreeMap<Integer, Boolean>();
+        for (Integer id: recent.keySet()) {
+            if (matches(recent.get(id), query, match) && commits.contains(id)) {
+                found.put(id, true);
+            }
+        }
+        String lower = query.toLowerCase(Locale.ROOT);
+        if (lower.length() < 3) {
+            for (int id = 0; id < covered; id++) {
+                if (commits.contains(id) && matches(commits.read(id).getMessage(), query, match)) {
+                    found.put(id, true);
+                }
+            }
+        } else {
+            for (int id: candidates(lower)) {
+                if (commits.contains(id) && matches(commits.read(id).getMessage(), query, match)) {
+                    found.put(id, true);
+                }
+            }
+        }
+        return new ArrayList<Integer>(found.descendingKeySet());
+    }
+
+    static boolean matches(String message, String query, Match match) {
+        if (match == Match.EXACT) {
+            return message.equals(query);
+        }
+        String lower = message.toLowerCase(Locale.ROOT);
+        query = query.toLowerCase(Locale.ROOT);
+        if (match == Match.SUBSTRING) {
+            return lower.contains(query);
+        }
+        for (String token: tokens(lower)) {
+            if (match == Match.TOKEN ? token.equals(query) : token.startsWith(query)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //words split on whitespace, without the punctuation around them: "(ABC-123):" is ABC-123
+    static ArrayList<String> tokens(String message) {
+        ArrayList<String> tokens = new ArrayList<String>();
+        for (String word: message.split("\\s+")) {
+            int start = 0;
+            int end = word.length();
+            while (start < end && !Character.isLetterOrDigit(word.charAt(start))) {
+                start++;
+            }
+            while (end > start && !Character.isLetterOrDigit(word.charAt(end - 1))) {
+                end--;
+            }
+            if (start < end) {
+                tokens.add(word.substring(start, end));
+            }
+        }
+        return tokens;
+    }
+
+    //messages of the commits up to lastId that message-index does not cover yet
+    private TreeMap<Integer, String> recent(int lastId) throws IOException {
+        load();
+        TreeMap<Integer, String> recent = new TreeMap<Integer, String>();
+        if (logFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                    Files.readAllBytes(logFile.toPath())))) {
+                Serialize.readHeader(in, LOG_MAGIC, VERSION);
+                while (in.available() > 0) {
+                    int id = Varint.readInt(in);
+                    String message = Varint.readString(in);
+                    if (id >= covered && id <= lastId) {
+                        recent.put(id, message);
+                    }
+                }
+            } catch (EOFException e) {
+                //the last entry was cut short, its commit is read from the commit log below
+            }
+        }
+        //commits made before the index existed
+        for (int id = covered; id <= lastId; id++) {
+            if (!recent.containsKey(id) && commits.contains(id)) {
+                recent.put(id, commits.read(id).getMessage());
+            }
+        }
+        return recent;
+    }
+
+    //ids in message-index with every trigram of query, ascending
+    private ArrayList<Integer> candidates(String query) {
+        ArrayList<Integer> result = null;
+        for (long key: trigramsOf(query)) {
+            int entry = lookup(key);
+            if (entry < 0) {
+                return new ArrayList<Integer>();
+            }
+            ArrayList<Integer> ids = postings(entry);
+            if (result == null) {
+                result = ids;
+            } else {
+                result = intersect(result, ids);
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    //position of key's entry in the table, or -1
+    private int lookup(long key) {
+        int low = 0;
+        int high = trigrams - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long found = map.getLong(tableStart() + mid * ENTRY);
+            if (found < key) {
+                low = mid + 1;
+            } else if (found > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private ArrayList<Integer> postings(int entry) {
+        int at = tableStart() + entry * ENTRY;
+        int position = (int) map.getLong(at + 8);
+        int count = map.getInt(at + 16);
+        ArrayList<Integer> ids = new ArrayList<Integer>(count);
+        int id = 0;
+        for (int i = 0; i < count; i++) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = map.get(position++);
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            id = i == 0 ? (int) value : id + (int) value;
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private static ArrayList<Integer> intersect(ArrayList<Integer> a, ArrayList<Integer> b) {
+        ArrayList<Integer> both = new ArrayList<Integer>();
+        int i = 0;
+        int j = 0;
+        while (i < a.size() && j < b.size()) {
+            int compare = Integer.compare(a.get(i), b.get(j));
+            if (compare == 0) {
+                both.add(a.get(i));
+                i++;
+                j++;
+            } else if (compare < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return both;
+    }
+
+    private static HashSet<Long> trigramsOf(String lower) {
+        HashSet<Long> keys = new HashSet<Long>();
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            keys.add(((long) lower.charAt(i) << 32) | ((long) lower.charAt(i + 1) << 16)
+                     | lower.charAt(i + 2));
+        }
+        return keys;
+    }
+
+    //moves recent (and any older commits it is missing) into message-index, a chunk at a
+    //time so that building the index for a long history never holds all of it in memory
+    private void fold(TreeMap<Integer, String> recent, int lastId) throws IOException {
+        while (covered <= lastId) {
+            int end = (int) Math.min((long) covered + FOLD_CHUNK, lastId + 1L);
+            TreeMap<Long, ArrayList<Integer>> added = new TreeMap<Long, ArrayList<Integer>>();
+            for (int id = covered; id < end; id++) {
+                String message = recent.containsKey(id) ? recent.get(id)
+                                 : commits.contains(id) ? commits.read(id).getMessage() : "";
+                for (long key: trigramsOf(message.toLowerCase(Locale.ROOT))) {
+                    if (!added.containsKey(key)) {
+                        added.put(key, new ArrayList<Integer>());
+                    }
+                    added.get(key).add(id);
+                }
+            }
+            writeIndex(added, end);
+        }
+        logFile.delete(); //everything in it is covered now
+    }
+
+    //writes message-index as the current one plus added, which only has ids >= covered
+    private void writeIndex(TreeMap<Long, ArrayList<Integer>> added, int newCovered)
+            throws IOException {
+        load();
+        TreeMap<Long, Integer> keys = new TreeMap<Long, Integer>(); //key --> old entry, or -1
+        for (int i = 0; i < trigrams; i++) {
+            keys.put(map.getLong(tableStart() + i * ENTRY), i);
+        }
+        for (Long key: added.keySet()) {
+            if (!keys.containsKey(key)) {
+                keys.put(key, -1);
+            }
+        }
+
+        //the ids go to a scratch file first, the table in front of them needs their offsets
+        //a name of its own, so one left behind by a crash is never read as this one
+        File ids = File.createTempFile("message-index", ".ids", file.getParentFile());
+        int tableEnd = HEADER + 8 + keys.size() * ENTRY;
+        ByteBuffer table = ByteBuffer.allocate(tableEnd);
+        table.put(MAGIC);
+        table.put((byte) VERSION);
+        table.putInt(newCovered);
+        table.putInt(keys.size());
+        long written = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(ids)))) {
+            for (Map.Entry<Long, Integer> key: keys.entrySet()) {
+                int old = key.getValue();
+                int count = 0;
+                int last = 0;
+                long start = written;
+                if (old >= 0) {
+                    //the old ids are copied as they are, the new ones all come after them
+                    int at = tableStart() + old * ENTRY;
+                    int position = (int) map.getLong(at + 8);
+                    int length = postingsLength(old);
+                    byte[] bytes = new byte[length];
+                    map.get(position, bytes);
+                    out.write(bytes);
+                    written += length;
+                    count = map.getInt(at + 16);
+                    last = map.getInt(at + 20);
+                }
+                ArrayList<Integer> more = added.get(key.getKey());
+                if (more != null) {
+                    for (int id: more) {
+                        long gap = count == 0 ? id : id - last;
+                        written += varintLength(gap);
+                        Varint.write(out, gap);
+                        last = id;
+                        count++;
+                    }
+                }
+                table.putLong(key.getKey());
+                table.putLong(tableEnd + start);
+                table.putInt(count);
+                table.putInt(last);
+            }
+        }
+
+        File temp = File.createTempFile("message-index", ".tmp", file.getParentFile());
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                                                StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING);
+             FileChannel in = FileChannel.open(ids.toPath(), StandardOpenOption.READ)) {
+            table.flip();
+            while (table.hasRemaining()) {
+                out.write(table);
+            }
+            long position = 0;
+            while (position < in.size()) {
+                position += in.transferTo(position, in.size() - position, out);
+            }
+        }
+        ids.delete();
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        map = null;
+        load();
+    }
+
+    //entries are in trigram order, not offset order, so the length is found by decoding
+    private int postingsLength(int entry) {
+        int at = tableStart() + entry * ENTRY;
+        int position = (int) map.getLong(at + 8);
+        int count = map.getInt(at + 16);
+        int start = position;
+        for (int i = 0; i < count; i++) {
+            while ((map.get(position++) & 0x80) != 0) {
+                continue;
+            }
+        }
+        return position - start;
+    }
+
+    private static int varintLength(long value) {
+        int length = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private int tableStart() {
+        return HEADER + 8;
+    }
+
+    private void load() throws IOException {
+        if (map != null) {
+            return;
+        }
+        covered = 0;
+        trigrams = 0;
+        map = ByteBuffer.allocate(0);
+        if (!file.exists()) {
+            return;
+        }
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            byte[] header = new byte[(int) Math.min(HEADER, in.size())];
+            mapped.get(0, header);
+            Serialize.readHeader(new DataInputStream(new ByteArrayInputStream(header)),
+                                 MAGIC, VERSION);
+            map = mapped;
+            covered = map.getInt(HEADER);
+            trigrams = map.getInt(HEADER + 4);
+        }
+    }
+}
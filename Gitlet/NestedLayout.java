@@ -0,0 +1,143 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+
+//Upgrades a repository made when every commit was a directory nested inside its parent's
+//(.gitlet/0/1/2/...) and committed files were copied into those directories.
+//The old gitlet.ser is read as it was written, each copied file goes into the object store,
+//each info.txt becomes a flat commit record and the nested directories are deleted.
+//The copies are linked into the store rather than copied since they are deleted anyway.
+//The old paths are relative to the top of the working tree, root, and so are the new ones.
+
+public class NestedLayout {
+
+    //the fields of Git as they were serialized in the nested layout
+    private static class LegacyGit implements Serializable {
+        //never checked: LegacyInputStream reads the old Git's fields against this class
+        private static final long serialVersionUID = 1L;
+
+        private HashSet<File> filesAdded;
+        private HashMap<Integer, HashMap<File, Integer>> modified;
+        private HashMap<String, LinkedList<File>> findCommitID;
+        private HashSet<File> fileForRemoval;
+        private HashMap<Integer, HashMap<File, File>> commitHist;
+        private HashMap<String, Integer> branchToCurrentID;
+        private HashMap<String, File> branchToDir;
+        private Integer commit;
+        private String currentBranch;
+    }
+
+    //reads the old Git object into LegacyGit, which has exactly the same fields
+    private static class LegacyInputStream extends ObjectInputStream {
+        LegacyInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = super.readClassDescriptor();
+            if (desc.getName().equals("Git")) {
+                return ObjectStreamClass.lookup(LegacyGit.class);
+            }
+            return desc;
+        }
+    }
+
+    public static boolean isNested(File root) {
+        return new File(root, ".gitlet/0/info.txt").exists();
+    }
+
+    public static Git migrate(File root) throws IOException, ClassNotFoundException {
+        LegacyGit old;
+        File gitletDir = new File(root, ".gitlet");
+        try (LegacyInputStream in = new LegacyInputStream(new FileInputStream(
+                new File(gitletDir, "gitlet.ser")))) {
+            old = (LegacyGit) in.readObject();
+        }
+        ObjectStore objects = new ObjectStore(new File(gitletDir, "objects"));
+        CommitStore commits = new CommitStore(gitletDir, objects);
+
+        //the same copy is shared by every commit that inherited it, so only hash it once
+        HashMap<File, String> stored = new HashMap<File, String>();
+        HashMap<Integer, Tree> trees = new HashMap<Integer, Tree>();
+        for (Integer id: old.commitHist.keySet()) {
+            Tree files = Tree.empty(objects);
+            HashMap<File, Integer> modified = old.modified.get(id);
+            for (File file: old.commitHist.get(id).keySet()) {
+                File copy = FileUtil.resolve(root, normalize(old.commitHist.get(id).get(file)));
+                if (!stored.containsKey(copy) && copy.exists()) {
+                    stored.put(copy, objects.writeLinked(copy));
+                }
+                if (stored.containsKey(copy)) {
+                    Integer lastModified = modified == null ? id : modified.get(file);
+                    files = files.with(normalize(file), stored.get(copy), lastModified);
+                }
+            }
+            trees.put(id, files);
+        }
+
+        //a commit's parent is whichever directory it was nested in
+        ArrayList<Commit> records = new ArrayList<Commit>();
+        for (LinkedList<File> dirs: old.findCommitID.values()) {
+            for (File dir: dirs) {
+                dir = normalize(dir);
+                Integer id = Integer.parseInt(dir.getName());
+                Integer parent = Commit.NO_PARENT;
+                if (!dir.getParentFile().getName().equals(".gitlet")) {
+                    parent = Integer.parseInt(dir.getParentFile().getName());
+                }
+                if (!trees.containsKey(id)) {
+                    trees.put(id, Tree.empty(objects));
+                }
+                records.add(readInfo(FileUtil.resolve(root, dir), id, parent, trees.get(id)));
+            }
+        }
+        Journal journal = new Journal(gitletDir);
+        commits.write(records, journal);
+        journal.commit();
+
+        HashSet<File> filesAdded = new HashSet<File>();
+        for (File file: old.filesAdded) {
+            filesAdded.add(normalize(file));
+        }
+        HashSet<File> fileForRemoval = new HashSet<File>();
+        for (File file: old.fileForRemoval) {
+            fileForRemoval.add(normalize(file));
+        }
+
+        Git g = new Git(old.commit, old.currentBranch, old.branchToCurrentID, 
+                        filesAdded, fileForRemoval, root);
+        //save the upgraded state before the old directories are thrown away
+        Serialize.serializeGit(g);
+        FileUtil.recursiveDelete(new File(gitletDir, "0"));
+        new File(gitletDir, "gitlet.ser").delete();
+        return g;
+    }
+
+    private static Commit readInfo(File dir, Integer id, Integer parent, Tree files) 
+            throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(new File(dir, "info.txt")))) {
+            in.readLine(); //Commit <id>.
+            long timestamp = Timestamp.valueOf(in.readLine()).getTime();
+            String message = in.readLine();
+            return new Commit(id, parent, timestamp, message, files);
+        }
+    }
+
+    //repositories made on Windows serialized their paths with backslashes
+    private static File normalize(File file) {
+        return new File(file.getPath().replace('\\', '/'));
+    }
+}
@@ -0,0 +1,500 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+
+//Content-addressed storage for committed files. Every object lives at
+//objects/<first 2 hex chars>/<remaining 38 hex chars> of the SHA-1 of its contents,
+//so identical content is only ever written once no matter how many commits use it.
+//
+//Objects are never changed once stored. Running with -Dgitlet.hardlinks=true checks them
+//out as read-only hard links instead of copies, which costs no disk space or copying but
+//means a working file must be replaced rather than edited in place.
+//
+//Files of at least -Dgitlet.chunkThreshold bytes (4 MB by default) are split into chunks
+//(see Chunker), each stored as an object of its own, so an edit to one region of a large
+//file stores only the chunks it changed. The file's hash, the SHA-1 of its whole contents
+//like any other file's, then names a manifest instead of a copy: a header, a varint count
+//and the hash and varint length of each chunk in order. A manifest is told apart from a
+//file that happens to start with the same bytes by its own hash, which is not its name.
+//
+//repack moves loose objects into pack files in objects/pack (see Pack and PackWriter).
+//Every read looks for a loose object first and then in the packs, so callers never need
+//to know where an object ended up. Delta bases read from packs are kept in a small cache,
+//since the objects of one checkout tend to share them.
+
+public class ObjectStore {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final HexFormat HEX = HexFormat.of();
+    private static final boolean HARD_LINKS = Boolean.getBoolean("gitlet.hardlinks");
+    private static final long CACHE_BYTES = 32 * 1024 * 1024;
+    private static final byte[] MANIFEST_MAGIC = {'G', 'L', 'C', 'K'};
+    private static final int MANIFEST_VERSION = 1;
+    private static final int BINARY_CHECK = 8000; //bytes looked at for a NUL, like git
+
+    private File dir;
+    private ArrayList<Pack> packs; //null until the pack directory is first looked at
+    private LinkedHashMap<String, byte[]> cache = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private long cached; //bytes in cache
+    private long chunkThreshold = Long.getLong("gitlet.chunkThreshold", 4 * 1024 * 1024);
+    private ArrayList<File> written = new ArrayList<File>(); //not synced yet, see Journal
+
+    public ObjectStore(File dir) {
+        this.dir = dir;
+    }
+
+    //copies file into the store (if its contents are not there already) and returns its hash
+    public String write(File file) throws IOException {
+        if (file.length() >= chunkThreshold) {
+            return writeChunks(file);
+        }
+        dir.mkdirs();
+        File temp = File.createTempFile("obj", ".tmp", dir);
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(new FileInputStream(file), digest);
+             OutputStream out = new FileOutputStream(temp)) {
+            copy(in, out);
+        }
+        Trace.opened(2);
+        Trace.read(temp.length());
+        Trace.wrote(temp.length());
+        String hash = toHex(digest.digest());
+        File object = getFile(hash);
+        if (contains(hash)) {
+            temp.delete(); //already stored by an earlier commit
+        } else {
+            object.getParentFile().mkdirs();
+            Files.move(temp.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            written(object);
+        }
+        return hash;
+    }
+
+    //like write, for a file nothing will change again (e.g. an old commit's copy), which is
+    //linked into the store instead of copied
+    public String writeLinked(File file) throws IOException {
+        if (file.length() >= chunkThreshold) {
+            return writeChunks(file);
+        }
+        String hash = hash(file);
+        File object = getFile(hash);
+        if (!contains(hash)) {
+            object.getParentFile().mkdirs();
+            FileUtil.linkFile(file, object);
+            written(object);
+        }
+        return hash;
+    }
+
+    //stores small objects built in memory, like the nodes of a Tree
+    public String writeBytes(byte[] contents) throws IOException {
+        MessageDigest digest = newDigest();
+        String hash = toHex(digest.digest(contents));
+        File object = getFile(hash);
+        if (!contains(hash)) {
+            object.getParentFile().mkdirs();
+            File temp = File.createTempFile("obj", ".tmp", dir);
+            Files.write(temp.toPath(), contents);
+            Files.move(temp.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Trace.opened(1);
+            Trace.wrote(contents.length);
+            written(object);
+        }
+        return hash;
+    }
+
+    //the objects stored since the last call, for the next save to sync
+    public synchronized ArrayList<File> takeWritten() {
+        ArrayList<File> files = written;
+        written = new ArrayList<File>();
+        return files;
+    }
+
+    //the object as stored: for a large file, its manifest
+    public byte[] readBytes(String hash) throws IOException {
+        Trace.objectRead();
+        File object = getFile(hash);
+        if (object.exists()) {
+            byte[] contents = Files.readAllBytes(object.toPath());
+            Trace.opened(1);
+            Trace.read(contents.length);
+            return contents;
+        }
+        synchronized (cache) {
+            if (cache.containsKey(hash)) {
+                return cache.get(hash);
+            }
+        }
+        for (Pack pack: packs()) {
+            byte[] contents = pack.read(hash, this);
+            if (contents != null) {
+                Trace.read(contents.length); //as inflated, packs are memory mapped
+                remember(hash, contents);
+                return contents;
+            }
+        }
+        throw new IOException("object " + hash + " is missing");
+    }
+
+    public boolean contains(String hash) throws IOException {
+        if (getFile(hash).exists()) {
+            return true;
+        }
+        for (Pack pack: packs()) {
+            if (pack.contains(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //where the object is or would be stored loose, repack may have moved it into a pack
+    public File getFile(String hash) {
+        return new File(new File(dir, hash.substring(0, 2)), hash.substring(2));
+    }
+
+    //deletes the loose copy of an object, and its shard directory once that is empty, so
+    //looseHashes does not list hundreds of empty ones after a repack
+    public boolean deleteLoose(String hash) {
+        File object = getFile(hash);
+        if (!object.delete()) {
+            return false;
+        }
+        object.getParentFile().delete(); //only succeeds if it was the last one
+        return true;
+    }
+
+    public File getPackDir() {
+        return new File(dir, "pack");
+    }
+
+    //hashes of the objects not in a pack
+    public ArrayList<String> looseHashes() {
+        ArrayList<String> hashes = new ArrayList<String>();
+        File[] shards = dir.listFiles();
+        if (shards == null) {
+            return hashes;
+        }
+        for (File shard: shards) {
+            if (shard.isDirectory() && shard.getName().length() == 2) {
+                for (File object: shard.listFiles()) {
+                    hashes.add(shard.getName() + object.getName());
+                }
+            }
+        }
+        return hashes;
+    }
+
+    public synchronized ArrayList<Pack> packs() throws IOException {
+        if (packs == null) {
+            packs = new ArrayList<Pack>();
+            File[] indexes = getPackDir().listFiles((d, name) -> name.endsWith(".idx"));
+            if (indexes != null) {
+                for (File index: indexes) {
+                    packs.add(new Pack(index));
+                }
+            }
+        }
+        return packs;
+    }
+
+    //deletes the loose objects not in live, and scratch files left by an interrupted write,
+    //that have not been modified since before. Returns the number of objects deleted
+    public int sweep(Set<String> live, long before) {
+        int removed = 0;
+        for (String hash: looseHashes()) {
+            File object = getFile(hash);
+            if (!live.contains(hash) && object.lastModified() < before && deleteLoose(hash)) {
+                removed += 1;
+            }
+        }
+        for (File scratch: new File[] {dir, getPackDir()}) {
+            File[] temps = scratch.listFiles((d, name) -> name.endsWith(".tmp"));
+            for (File temp: temps == null ? new File[0] : temps) {
+                if (temp.lastModified() < before) {
+                    temp.delete();
+                }
+            }
+        }
+        synchronized (cache) {
+            cache.clear();
+            cached = 0;
+        }
+        return removed;
+    }
+
+    //after packs were added or removed
+    public synchronized void reloadPacks() {
+        packs = null;
+    }
+
+    //the contents of the file stored under hash, chunked or not
+    public InputStream open(String hash) throws IOException {
+        InputStream loose = openLoose(hash);
+        if (loose != null) {
+            return loose;
+        }
+        ArrayList<String> chunks = chunks(hash);
+        if (chunks.isEmpty()) {
+            return new ByteArrayInputStream(readBytes(hash));
+        }
+        Iterator<String> next = chunks.iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            public boolean hasMoreElements() {
+                return next.hasNext();
+            }
+
+            public InputStream nextElement() {
+                try {
+                    return open(next.next());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    //the stored file as text, or null if it is binary or chunked. Decoded as ISO-8859-1 so
+    //every byte survives whatever the encoding
+    public String readText(String hash) throws IOException {
+        InputStream loose = openLoose(hash);
+        if (loose == null && !chunks(hash).isEmpty()) {
+            return null; //a large file, most likely not text and too big to hold anyway
+        }
+        try (InputStream in = loose != null ? loose : open(hash)) {
+            return text(in.readAllBytes());
+        }
+    }
+
+    //the loose object, opened once both to see it is not a manifest and to read it, or
+    //null if it is packed or a manifest
+    private InputStream openLoose(String hash) throws IOException {
+        File object = getFile(hash);
+        if (!object.exists()) {
+            return null;
+        }
+        InputStream in = new BufferedInputStream(new FileInputStream(object), BUFFER_SIZE);
+        in.mark(MANIFEST_MAGIC.length);
+        byte[] start = in.readNBytes(MANIFEST_MAGIC.length);
+        in.reset();
+        Trace.opened(1);
+        if (Arrays.equals(start, MANIFEST_MAGIC)) {
+            in.close(); //chunked most likely, see manifest
+            return null;
+        }
+        Trace.objectRead();
+        Trace.read(object.length());
+        return in;
+    }
+
+    //the same for a working file
+    public String readText(File file) throws IOException {
+        if (file.length() >= chunkThreshold) {
+            return null;
+        }
+        Trace.opened(1);
+        Trace.read(file.length());
+        return text(Files.readAllBytes(file.toPath()));
+    }
+
+    private static String text(byte[] contents) {
+        for (int i = 0; i < Math.min(contents.length, BINARY_CHECK); i++) {
+            if (contents[i] == 0) {
+                return null;
+            }
+        }
+        return new String(contents, StandardCharsets.ISO_8859_1);
+    }
+
+    //the hashes of a large file's chunks in order, or an empty list if hash is not chunked
+    public ArrayList<String> chunks(String hash) throws IOException {
+        ArrayList<String> chunks = new ArrayList<String>();
+        byte[] manifest = manifest(hash);
+        if (manifest != null) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(manifest));
+            Serialize.readHeader(in, MANIFEST_MAGIC, MANIFEST_VERSION);
+            int count = Varint.readInt(in);
+            byte[] raw = new byte[20];
+            for (int i = 0; i < count; i++) {
+                in.readFully(raw);
+                Varint.read(in); //the chunk's length
+                chunks.add(toHex(raw));
+            }
+        }
+        return chunks;
+    }
+
+    //writes the object's contents to target in the working directory. A loose object is
+    //opened once, both to see it is not a manifest and to copy it
+    public void copyTo(String hash, File target) throws IOException {
+        File object = getFile(hash);
+        if (object.exists() && !HARD_LINKS) {
+            try (FileChannel in = FileChannel.open(object.toPath(), StandardOpenOption.READ)) {
+                ByteBuffer start = ByteBuffer.allocate(MANIFEST_MAGIC.length);
+                while (start.hasRemaining() && in.read(start, start.position()) > 0) {
+                    continue;
+                }
+                if (!Arrays.equals(start.array(), 0, start.position(), MANIFEST_MAGIC, 0,
+                                   MANIFEST_MAGIC.length)) {
+                    Trace.objectRead();
+                    FileUtil.copyFile(in, target);
+                    return;
+                }
+            }
+        }
+        if (!object.exists() || manifest(hash) != null) {
+            FileUtil.writeStream(target, open(hash)); //packed or chunked
+        } else if (HARD_LINKS) {
+            object.setReadOnly(); //shared with target, so an in-place edit cannot reach it
+            FileUtil.linkFile(object, target);
+        } else {
+            FileUtil.copyFile(object, target);
+        }
+    }
+
+    //the hash a file would be stored under, computed without reading it all into memory
+    public static String hash(File file) throws IOException {
+        long hashing = Trace.begin();
+        MessageDigest digest = newDigest();
+        long size = 0;
+        try (InputStream in = new DigestInputStream(new FileInputStream(file), digest)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                size += read;
+            }
+        }
+        Trace.opened(1);
+        Trace.read(size);
+        Trace.end("hash", hashing);
+        return toHex(digest.digest());
+    }
+
+    //stores a large file chunk by chunk, reading it once, and returns its hash
+    private String writeChunks(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(entries);
+        int count = 0;
+        try (InputStream in = new DigestInputStream(new FileInputStream(file), digest)) {
+            Chunker chunker = new Chunker(in);
+            for (byte[] chunk = chunker.next(); chunk != null; chunk = chunker.next()) {
+                out.write(toBytes(writeBytes(chunk))); //chunks the file had before are kept
+                Varint.write(out, chunk.length);
+                count += 1;
+            }
+        }
+        Trace.opened(1);
+        Trace.read(file.length());
+        String hash = toHex(digest.digest());
+        if (!contains(hash)) {
+            ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(manifest);
+            header.write(MANIFEST_MAGIC);
+            header.writeByte(MANIFEST_VERSION);
+            Varint.write(header, count);
+            entries.writeTo(manifest);
+            File object = getFile(hash);
+            object.getParentFile().mkdirs();
+            File temp = File.createTempFile("obj", ".tmp", dir);
+            Files.write(temp.toPath(), manifest.toByteArray());
+            Files.move(temp.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            Trace.opened(1);
+            Trace.wrote(manifest.size());
+            written(object);
+        }
+        return hash;
+    }
+
+    //the manifest stored under hash, or null if the object is not a chunked file
+    private byte[] manifest(String hash) throws IOException {
+        File object = getFile(hash);
+        if (object.exists()) {
+            byte[] start = new byte[MANIFEST_MAGIC.length];
+            Trace.opened(1);
+            try (InputStream in = new FileInputStream(object)) {
+                if (in.readNBytes(start, 0, start.length) < start.length 
+                    || !Arrays.equals(start, MANIFEST_MAGIC)) {
+                    return null;
+                }
+            }
+        }
+        byte[] contents = readBytes(hash);
+        if (contents.length < MANIFEST_MAGIC.length 
+            || !Arrays.equals(contents, 0, MANIFEST_MAGIC.length, MANIFEST_MAGIC, 0, 
+                              MANIFEST_MAGIC.length)) {
+            return null;
+        }
+        return toHex(newDigest().digest(contents)).equals(hash) ? null : contents;
+    }
+
+    private synchronized void written(File object) {
+        written.add(object);
+        Trace.objectWritten();
+    }
+
+    private void remember(String hash, byte[] contents) {
+        if (contents.length > CACHE_BYTES / 4) {
+            return;
+        }
+        synchronized (cache) {
+            cache.put(hash, contents);
+            cached += contents.length;
+            Iterator<byte[]> oldest = cache.values().iterator();
+            while (cached > CACHE_BYTES && oldest.hasNext()) {
+                cached -= oldest.next().length;
+                oldest.remove();
+            }
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); //every JVM is required to ship SHA-1
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        return HEX.formatHex(bytes);
+    }
+
+    public static byte[] toBytes(String hex) {
+        return HEX.parseHex(hex);
+    }
+}
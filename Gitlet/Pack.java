@@ -0,0 +1,243 @@
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+
+//One pack file written by repack, objects/pack/pack-<hash>.pack, and its index .idx.
+//Both are mapped into memory, the pack in 1 GB segments since a buffer maps at most 2 GB
+//and repack puts every object into one pack; an entry may start in one segment and end
+//in the next. An object is found by a binary search of the index and
+//only its own entry is inflated; a delta also needs its base, which is read the same way,
+//so no more of the pack than the chain of that one object is ever decompressed.
+//
+//The pack is a header and then entries: a type byte (0 whole object, 1 delta), a varint
+//size of the object, for deltas the 20 byte hash of the base and the varint size of the
+//delta, then a varint compressed length and the zlib data. The index is a header, a 4
+//byte count and then one 28 byte entry per object sorted by hash: the hash and the 8 byte
+//offset of its entry in the pack.
+
+public class Pack {
+    static final byte[] MAGIC = {'G', 'L', 'P', 'K'};
+    static final byte[] INDEX_MAGIC = {'G', 'L', 'P', 'I'};
+    static final int VERSION = 1;
+    static final int HEADER = 5;
+    static final int WHOLE = 0;
+    static final int DELTA = 1;
+    static final int INDEX_ENTRY = 28;
+    private static final int SEGMENT = 1 << 30;
+
+    private File packFile;
+    private File indexFile;
+    private ByteBuffer[] pack;
+    private long packSize;
+    private ByteBuffer index;
+    private int count;
+    private int segment = SEGMENT;
+
+    public Pack(File indexFile) throws IOException {
+        this.indexFile = indexFile;
+        String name = indexFile.getName();
+        this.packFile = new File(indexFile.getParentFile(),
+                                 name.substring(0, name.length() - 4) + ".pack");
+        this.index = map(indexFile, INDEX_MAGIC);
+        this.count = index.getInt(HEADER);
+        mapPack();
+    }
+
+    //smaller segments, so a test can cross them without writing gigabytes
+    void setSegmentSize(int segment) throws IOException {
+        this.segment = segment;
+        mapPack();
+    }
+
+    public File getPackFile() {
+        return packFile;
+    }
+
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    public boolean contains(String hash) {
+        return find(ObjectStore.toBytes(hash)) >= 0;
+    }
+
+    //every hash in the pack, in order
+    public String[] hashes() {
+        String[] hashes = new String[count];
+        byte[] raw = new byte[20];
+        for (int i = 0; i < count; i++) {
+            index.get(HEADER + 4 + i * INDEX_ENTRY, raw);
+            hashes[i] = ObjectStore.toHex(raw);
+        }
+        return hashes;
+    }
+
+    //the object's size once inflated, or -1 if it is not in this pack
+    public int size(String hash) {
+        int i = find(ObjectStore.toBytes(hash));
+        if (i < 0) {
+            return -1;
+        }
+        long[] value = new long[1];
+        readVarint(offset(i) + 1, value);
+        return (int) value[0];
+    }
+
+    //the object's contents, or null if it is not in this pack. Delta bases come from store
+    public byte[] read(String hash, ObjectStore store) throws IOException {
+        int i = find(ObjectStore.toBytes(hash));
+        if (i < 0) {
+            return null;
+        }
+        long position = offset(i);
+        int type = byteAt(position++);
+        long[] value = new long[1];
+        position = readVarint(position, value);
+        int size = (int) value[0];
+        String base = null;
+        if (type == DELTA) {
+            byte[] raw = new byte[20];
+            get(position, raw);
+            position += 20;
+            base = ObjectStore.toHex(raw);
+            position = readVarint(position, value);
+            size = (int) value[0];
+        }
+        position = readVarint(position, value);
+        byte[] data = inflate(bytes(position, (int) value[0]), size);
+        if (type == WHOLE) {
+            return data;
+        }
+        return Delta.apply(store.readBytes(base), data);
+    }
+
+    private int find(byte[] hash) {
+        int low = 0;
+        int high = count - 1;
+        byte[] found = new byte[20];
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            index.get(HEADER + 4 + mid * INDEX_ENTRY, found);
+            int compare = Arrays.compareUnsigned(found, hash);
+            if (compare < 0) {
+                low = mid + 1;
+            } else if (compare > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    //where entry i of the index starts in the pack
+    private long offset(int i) {
+        return index.getLong(HEADER + 4 + i * INDEX_ENTRY + 20);
+    }
+
+    private byte byteAt(long position) {
+        return pack[(int) (position / segment)].get((int) (position % segment));
+    }
+
+    //copies the pack from position into bytes, across segments
+    private void get(long position, byte[] bytes) throws IOException {
+        if (position + bytes.length > packSize) {
+            throw new IOException("pack is cut short");
+        }
+        int done = 0;
+        while (done < bytes.length) {
+            ByteBuffer in = pack[(int) ((position + done) / segment)];
+            int at = (int) ((position + done) % segment);
+            int n = Math.min(bytes.length - done, in.limit() - at);
+            in.get(at, bytes, done, n);
+            done += n;
+        }
+    }
+
+    //length bytes from position, without a copy unless they cross into the next segment
+    private ByteBuffer bytes(long position, int length) throws IOException {
+        int at = (int) (position % segment);
+        ByteBuffer in = pack[(int) (position / segment)];
+        if (at + (long) length <= in.limit()) {
+            return in.slice(at, length);
+        }
+        byte[] copy = new byte[length];
+        get(position, copy);
+        return ByteBuffer.wrap(copy);
+    }
+
+    private long readVarint(long position, long[] value) {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = byteAt(position++);
+            result |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        value[0] = result;
+        return position;
+    }
+
+    private static byte[] inflate(ByteBuffer compressed, int size) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] data = new byte[size];
+            int done = 0;
+            while (done < size && !inflater.finished()) {
+                int n = inflater.inflate(data, done, size - done);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                done += n;
+            }
+            if (done != size) {
+                throw new IOException("corrupt pack entry");
+            }
+            return data;
+        } catch (DataFormatException e) {
+            throw new IOException("corrupt pack entry", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    //the pack mapped read only a segment at a time, each buffer but the last segment long
+    private void mapPack() throws IOException {
+        try (FileChannel in = FileChannel.open(packFile.toPath(), StandardOpenOption.READ)) {
+            packSize = in.size();
+            int segments = (int) Math.max(1, (packSize + segment - 1) / segment);
+            ByteBuffer[] mapped = new ByteBuffer[segments];
+            for (int i = 0; i < mapped.length; i++) {
+                long start = (long) i * segment;
+                mapped[i] = in.map(FileChannel.MapMode.READ_ONLY, start,
+                                   Math.min(segment, packSize - start));
+            }
+            pack = mapped;
+        }
+        byte[] header = new byte[(int) Math.min(HEADER, packSize)];
+        get(0, header);
+        Serialize.readHeader(new DataInputStream(new ByteArrayInputStream(header)),
+                             MAGIC, VERSION);
+    }
+
+    private static ByteBuffer map(File file, byte[] magic) throws IOException {
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+            byte[] header = new byte[(int) Math.min(HEADER, in.size())];
+            mapped.get(0, header);
+            Serialize.readHeader(new DataInputStream(new ByteArrayInputStream(header)),
+                                 magic, VERSION);
+            return mapped;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+
+
+//`gitlet repack`: puts every object, loose or already packed, into one new pack and
+//deletes what it replaces. Objects are sorted by the path they were committed under and
+//then by size, largest first, so versions of the same file sit next to each other with
+//the newest (usually largest) version first. Each object is then tried as a delta against
+//the few before it and stored as the smallest delta if that saves at least half, or whole
+//otherwise. Delta chains are kept short so reading an old version stays cheap.
+
+public class PackWriter {
+    private static final int WINDOW = 10;
+    private static final int MAX_DEPTH = 50;
+
+    private ObjectStore objects;
+
+    private static class Candidate {
+        private String hash;
+        private String path;
+        private int size;
+        private byte[] contents;
+        private int depth; //how many deltas deep it was stored
+    }
+
+    public PackWriter(ObjectStore objects) {
+        this.objects = objects;
+    }
+
+    //paths: hash --> a path it was committed under, to find similar objects. Returns the
+    //number of objects in the new pack
+    public int repack(HashMap<String, String> paths) throws IOException {
+        return repack(paths, null);
+    }
+
+    //for gc: rewrites the packs without the objects that are not in paths, unless their
+    //pack was written since before. Returns the number of objects dropped
+    public int prune(HashMap<String, String> paths, long before) throws IOException {
+        HashSet<String> keep = new HashSet<String>(paths.keySet());
+        int dropped = 0;
+        for (Pack pack: objects.packs()) {
+            boolean recent = pack.getPackFile().lastModified() >= before;
+            for (String hash: pack.hashes()) {
+                if (recent) {
+                    keep.add(hash);
+                } else if (!keep.contains(hash)) {
+                    dropped += 1;
+                }
+            }
+        }
+        if (dropped > 0) {
+            repack(paths, keep);
+        }
+        return dropped;
+    }
+
+    //packs the objects in keep, or all of them if keep is null. Loose objects not in keep
+    //are left where they are, packed ones are gone with their old pack
+    private int repack(HashMap<String, String> paths, Set<String> keep) throws IOException {
+        ArrayList<Pack> oldPacks = new ArrayList<Pack>(objects.packs());
+        TreeSet<String> hashes = new TreeSet<String>();
+        for (String hash: objects.looseHashes()) {
+            if (keep == null || keep.contains(hash)) {
+                hashes.add(hash);
+            }
+        }
+        ArrayList<String> loose = new ArrayList<String>(hashes);
+        for (Pack pack: oldPacks) {
+            for (String hash: pack.hashes()) {
+                if (keep == null || keep.contains(hash)) {
+                    hashes.add(hash);
+                }
+            }
+        }
+        if (hashes.isEmpty()) {
+            replace(oldPacks, null, loose); //nothing left worth packing
+            return 0;
+        }
+
+        ArrayList<Candidate> order = new ArrayList<Candidate>();
+        for (String hash: hashes) {
+            Candidate c = new Candidate();
+            c.hash = hash;
+            c.path = paths.containsKey(hash) ? paths.get(hash) : "";
+            c.size = size(hash, oldPacks);
+            order.add(c);
+        }
+        order.sort((a, b) -> {
+            int byName = new File(a.path).getName().compareTo(new File(b.path).getName());
+            if (byName != 0) {
+                return byName;
+            }
+            int byPath = a.path.compareTo(b.path);
+            return byPath != 0 ? byPath : Integer.compare(b.size, a.size);
+        });
+
+        File dir = objects.getPackDir();
+        dir.mkdirs();
+        File packTemp = File.createTempFile("pack", ".tmp", dir);
+        HashMap<String, Long> offsets = new HashMap<String, Long>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(packTemp)))) {
+            out.write(Pack.MAGIC);
+            out.writeByte(Pack.VERSION);
+            long written = Pack.HEADER;
+            LinkedList<Candidate> window = new LinkedList<Candidate>();
+            Deflater deflater = new Deflater();
+            try {
+                for (Candidate c: order) {
+                    c.contents = objects.readBytes(c.hash);
+                    Candidate base = null;
+                    byte[] best = null;
+                    for (Candidate other: window) {
+                        if (other.depth >= MAX_DEPTH) {
+                            continue;
+                        }
+                        byte[] delta = Delta.create(other.contents, c.contents);
+                        if (best == null || delta.length < best.length) {
+                            best = delta;
+                            base = other;
+                        }
+                    }
+                    offsets.put(c.hash, written);
+                    ByteArrayOutputStream entry = new ByteArrayOutputStream();
+                    DataOutputStream header = new DataOutputStream(entry);
+                    byte[] data;
+                    if (best != null && best.length < c.contents.length / 2) {
+                        header.writeByte(Pack.DELTA);
+                        Varint.write(header, c.contents.length);
+                        header.write(ObjectStore.toBytes(base.hash));
+                        Varint.write(header, best.length);
+                        c.depth = base.depth + 1;
+                        data = deflate(deflater, best);
+                    } else {
+                        header.writeByte(Pack.WHOLE);
+                        Varint.write(header, c.contents.length);
+                        data = deflate(deflater, c.contents);
+                    }
+                    Varint.write(header, data.length);
+                    entry.write(data);
+                    entry.writeTo(out);
+                    written += entry.size();
+
+                    window.addLast(c);
+                    if (window.size() > WINDOW) {
+                        window.removeFirst().contents = null;
+                    }
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+
+        //the index, named after the objects it holds like the pack
+        MessageDigest digest = newDigest();
+        ByteBuffer index = ByteBuffer.allocate(Pack.HEADER + 4 + hashes.size() * Pack.INDEX_ENTRY);
+        index.put(Pack.INDEX_MAGIC);
+        index.put((byte) Pack.VERSION);
+        index.putInt(hashes.size());
+        for (String hash: hashes) {
+            byte[] raw = ObjectStore.toBytes(hash);
+            digest.update(raw);
+            index.put(raw);
+            index.putLong(offsets.get(hash));
+        }
+        String name = "pack-" + ObjectStore.toHex(digest.digest());
+        File packFile = new File(dir, name + ".pack");
+        File indexFile = new File(dir, name + ".idx");
+        File indexTemp = File.createTempFile("idx", ".tmp", dir);
+        Files.write(indexTemp.toPath(), index.array());
+        //readers find packs by their index, so it goes in last. Both are on disk before
+        //the loose objects and old packs they replace are deleted
+        Journal.sync(Arrays.asList(packTemp, indexTemp));
+        Files.move(packTemp.toPath(), packFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        Files.move(indexTemp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        Journal.sync(Arrays.asList(dir));
+
+        replace(oldPacks, indexFile, loose);
+        return hashes.size();
+    }
+
+    //everything worth keeping is in the new pack now
+    private void replace(ArrayList<Pack> oldPacks, File indexFile, ArrayList<String> loose) {
+        for (Pack pack: oldPacks) {
+            if (!pack.getIndexFile().equals(indexFile)) {
+                pack.getIndexFile().delete();
+                pack.getPackFile().delete();
+            }
+        }
+        for (String hash: loose) {
+            objects.deleteLoose(hash);
+        }
+        objects.reloadPacks();
+    }
+
+    private int size(String hash, ArrayList<Pack> packs) {
+        File loose = objects.getFile(hash);
+        if (loose.exists()) {
+            return (int) loose.length();
+        }
+        for (Pack pack: packs) {
+            int size = pack.size(hash);
+            if (size >= 0) {
+                return size;
+            }
+        }
+        return 0;
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] data) {
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 16);
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+//Runs a task for every item of a collection on a pool of threads, and waits for them all.
+//The first task that fails is what the caller sees, as the IOException or RuntimeException
+//it threw; the others are interrupted. With fewer than two items or threads everything
+//runs on the calling thread, without a pool.
+
+public class Parallel {
+    public interface Task<T> {
+        void run(T item) throws IOException;
+    }
+
+    public static <T> void forEach(Collection<T> items, int threads, Task<T> task)
+            throws IOException {
+        if (items.size() < 2 || threads < 2) {
+            for (T item: items) {
+                task.run(item);
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, items.size()));
+        try {
+            ArrayList<Future<Void>> running = new ArrayList<Future<Void>>();
+            for (T item: items) {
+                running.add(pool.submit(() -> {
+                    task.run(item);
+                    return null;
+                }));
+            }
+            for (Future<Void> f: running) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
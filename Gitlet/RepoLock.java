@@ -0,0 +1,121 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+
+
+//Keeps gitlet processes from overwriting each other's changes. Every command holds a lock
+//on its repository's .gitlet/lock from before it loads the repository until after it is saved: a shared
+//one for the commands that only look (log, global-log, find, status, diff), so any number
+//of them run at once, and an exclusive one for everything else, which waits for all
+//others to finish. The lock is the operating system's (FileChannel.lock), so it goes away
+//with a process that dies holding it.
+//
+//Commands that only look never save the repository, only caches that are replaced whole
+//by a rename (see Serialize.saveCaches), which is safe for several of them at once.
+//Whatever has to be written before the repository can be read at all, a journal left by a
+//crash (see Journal) or the old nested layout (see NestedLayout), is written under the
+//exclusive lock as soon as it is taken. A command that only looks and finds either takes
+//the exclusive lock for that first, and then its shared one again.
+//Locks are per process: threads of one process take turns some other way (the daemon
+//runs one command at a time).
+
+public class RepoLock implements AutoCloseable {
+    private static final HashSet<String> READ_ONLY = new HashSet<String>(Arrays.asList(
+        "log", "global-log", "find", "status", "diff"));
+
+    private FileChannel channel; //null when there is no repository to lock
+    private FileLock lock;
+
+    private RepoLock(FileChannel channel, FileLock lock) {
+        this.channel = channel;
+        this.lock = lock;
+    }
+
+    public static boolean isReadOnly(String command) {
+        return READ_ONLY.contains(command);
+    }
+
+    //the lock command needs on the repository whose working tree is root, waiting for it
+    //if another process is in the way
+    public static RepoLock acquire(File root, String command) throws IOException {
+        return acquire(root, isReadOnly(command));
+    }
+
+    public static RepoLock acquire(File root, boolean shared) throws IOException {
+        return acquire(root, shared, System.out);
+    }
+
+    //the same, saying so on out (null for nowhere) if it has to wait
+    public static RepoLock acquire(File root, boolean shared, PrintStream out)
+            throws IOException {
+        File dir = new File(root, ".gitlet");
+        if (!dir.isDirectory()) {
+            return new RepoLock(null, null); //init, or no repository yet
+        }
+        if (!shared) {
+            RepoLock lock = lock(dir, false, out);
+            try {
+                repair(root);
+            } catch (IOException | RuntimeException e) {
+                lock.close();
+                throw e;
+            }
+            return lock;
+        }
+        RepoLock lock = lock(dir, true, out);
+        while (needsRepair(root)) {
+            lock.close();
+            acquire(root, false, out).close(); //which repairs it
+            lock = lock(dir, true, out);
+        }
+        return lock;
+    }
+
+    //true if something has to be written before the repository can be read
+    private static boolean needsRepair(File root) {
+        return new File(root, ".gitlet/journal").exists()
+               || new File(root, ".gitlet/journal.tmp").exists() || NestedLayout.isNested(root);
+    }
+
+    private static void repair(File root) throws IOException {
+        Journal.recover(new File(root, ".gitlet")); //a save cut short by a crash
+        if (NestedLayout.isNested(root)) {
+            Serialize.load(root); //upgrades and saves it
+        }
+    }
+
+    private static RepoLock lock(File dir, boolean shared, PrintStream out) throws IOException {
+        File file = new File(dir, "lock");
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                               StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.tryLock(0, Long.MAX_VALUE, shared);
+            if (lock == null) {
+                if (out != null) {
+                    out.println("Waiting for another gitlet command to finish.");
+                }
+                lock = channel.lock(0, Long.MAX_VALUE, shared);
+            }
+            return new RepoLock(channel, lock);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public boolean isShared() {
+        return lock != null && lock.isShared();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close(); //releases the lock with it
+        }
+    }
+}
@@ -0,0 +1,219 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+
+//Gitlet as a library, for programs like a build server that would otherwise start a JVM
+//for every command. Each method is one gitlet command run the way `java Gitlet` runs it:
+//it takes the repository lock, reads the repository again if another process saved it
+//since, runs the command and saves the repository before it returns. Nothing is printed
+//and nothing is read from System.in. Results come back as objects and errors as a
+//GitletException (as before, what a command did before it failed is kept). The questions
+//commands ask before they overwrite working files go to a ConfirmationPolicy, YES unless
+//another is set.
+//
+//A repository can be opened in any directory, not only the current one: paths given to
+//and returned by its methods are relative to that directory. Loaded repositories are kept
+//in statics (Serialize), so commands of all Repository objects in a process take turns.
+
+public class Repository {
+    private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+            return;
+        }
+    });
+
+    private File root;
+    private Git git; //null until the first command loads it
+    private ConfirmationPolicy policy = ConfirmationPolicy.YES;
+    private PrintStream out = DISCARD;
+
+    //one command against the loaded repository
+    private interface Command<T> {
+        T run(Git g) throws IOException, GitletException;
+    }
+
+    private Repository(File root, Git git) {
+        this.root = root;
+        this.git = git;
+    }
+
+    public static Repository open(Path dir) throws IOException, GitletException {
+        File root = FileUtil.absolute(dir.toFile());
+        if (!new File(root, ".gitlet").isDirectory()) {
+            throw new GitletException.NotFound("No gitlet repository in " + dir);
+        }
+        return new Repository(root, null);
+    }
+
+    public static Repository init(Path dir) throws IOException, GitletException {
+        File root = FileUtil.absolute(dir.toFile());
+        synchronized (Repository.class) {
+            if (new File(root, ".gitlet").exists()) {
+                throw new GitletException.Rejected("A gitlet version control system already "
+                                                   + "exists in " + dir + ".");
+            }
+            Git g = new Git(root);
+            Serialize.serializeGit(g);
+            return new Repository(root, g);
+        }
+    }
+
+    public void setConfirmationPolicy(ConfirmationPolicy policy) {
+        this.policy = policy;
+    }
+
+    //where the messages commands print besides their results go (like "Already
+    //up-to-date."), null for nowhere, which is the default
+    public void setOutput(PrintStream out) {
+        this.out = out != null ? out : DISCARD;
+    }
+
+    public void add(String path) throws IOException, GitletException {
+        change(g -> {
+            g.add(new String[] {path});
+            return null;
+        });
+    }
+
+    public void remove(String path) throws IOException, GitletException {
+        change(g -> {
+            g.removeFile(new String[] {path});
+            return null;
+        });
+    }
+
+    //the new commit
+    public CommitInfo commit(String message) throws IOException, GitletException {
+        return change(g -> {
+            g.commit(new String[] {message});
+            return head(g);
+        });
+    }
+
+    //a branch, or a file as of the head of the current branch. The head afterwards
+    public CommitInfo checkout(String ref) throws IOException, GitletException {
+        return change(g -> {
+            g.checkout(new String[] {ref});
+            return head(g);
+        });
+    }
+
+    //path as of the commit
+    public void checkout(int commitId, String path) throws IOException, GitletException {
+        change(g -> {
+            g.checkout(new String[] {Integer.toString(commitId), path});
+            return null;
+        });
+    }
+
+    public void branch(String name) throws IOException, GitletException {
+        change(g -> {
+            g.createBranch(new String[] {name});
+            return null;
+        });
+    }
+
+    public void removeBranch(String name) throws IOException, GitletException {
+        change(g -> {
+            g.removeBranch(new String[] {name});
+            return null;
+        });
+    }
+
+    public CommitInfo reset(int commitId) throws IOException, GitletException {
+        return change(g -> {
+            g.reset(new String[] {Integer.toString(commitId)});
+            return head(g);
+        });
+    }
+
+    //the files that could not be merged cleanly, each with a <file>.conflicted next to it
+    public List<File> merge(String branch) throws IOException, GitletException {
+        return change(g -> g.merge(new String[] {branch}));
+    }
+
+    //the head afterwards. Interactive rebases ask the ConfirmationPolicy about each commit
+    public CommitInfo rebase(String branch, boolean interactive)
+            throws IOException, GitletException {
+        return change(g -> {
+            g.rebase(new String[] {branch}, interactive);
+            return head(g);
+        });
+    }
+
+    //the head of the current branch and up to count - 1 commits before it, newest first
+    public List<CommitInfo> log(int count) throws IOException, GitletException {
+        return look(g -> info(g.history(count)));
+    }
+
+    public List<CommitInfo> find(String message) throws IOException, GitletException {
+        return look(g -> info(g.find(message)));
+    }
+
+    public Status status() throws IOException, GitletException {
+        return look(g -> g.status());
+    }
+
+    private static CommitInfo head(Git g) throws IOException {
+        return new CommitInfo(g.history(1).get(0));
+    }
+
+    private static List<CommitInfo> info(List<Commit> commits) {
+        ArrayList<CommitInfo> info = new ArrayList<CommitInfo>();
+        for (Commit c: commits) {
+            info.add(new CommitInfo(c));
+        }
+        return info;
+    }
+
+    //a command that changes the repository, see RepoLock
+    private <T> T change(Command<T> command) throws IOException, GitletException {
+        return run(false, command);
+    }
+
+    //a command that only looks
+    private <T> T look(Command<T> command) throws IOException, GitletException {
+        return run(true, command);
+    }
+
+    private <T> T run(boolean readOnly, Command<T> command) throws IOException, GitletException {
+        synchronized (Repository.class) {
+            try (RepoLock lock = RepoLock.acquire(root, readOnly, null)) {
+                if (Serialize.isStale(git)) {
+                    git = Serialize.load(root);
+                    if (git == null) {
+                        throw new GitletException.NotFound("The gitlet repository is gone.");
+                    }
+                }
+                git.setConfirmationPolicy(policy);
+                git.setOutput(out);
+                T result;
+                try {
+                    result = command.run(git);
+                } catch (GitletException e) {
+                    save(lock); //like the command line, which prints the message and saves
+                    throw e;
+                } catch (IOException | RuntimeException e) {
+                    git = null; //may be half done, read the repository again next time
+                    throw e;
+                }
+                save(lock);
+                return result;
+            }
+        }
+    }
+
+    private void save(RepoLock lock) throws IOException {
+        if (lock.isShared()) {
+            Serialize.saveCaches(git);
+        } else {
+            Serialize.serializeGit(git);
+        }
+    }
+}
@@ -1,29 +1,189 @@
-import java.io.FileInputStream;
-import java.io.ObjectInputStream;
-import java.io.FileOutputStream;
-import java.io.ObjectOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 
 
+//Reads and writes .gitlet/state, the only file every command needs: the commit counter,
+//the branches and what is staged. It is a small versioned binary file. Commits are read
+//lazily from the CommitStore, and only commits a command created or changed are written.
+//The state and the commits are saved together through one Journal, so after a crash the
+//repository is either as it was before the command or as it was after.
+
 public class Serialize {
+    private static final byte[] MAGIC = {'G', 'L', 'S', 'T'};
+    private static final int VERSION = 1;
+    //files a command can change while the state stays as it was: a merge rewrites a
+    //commit, gc clears commits from the index
+    private static final String[] STAMPED = {"commit-log", "commit-log.idx", "commit-graph"};
+
+    //per repository (its root): the state as it was loaded, so a command that changes
+    //nothing does not rewrite it, the Git it is the state of, and the stamp of STAMPED
+    private static HashMap<File, byte[]> loadedState = new HashMap<File, byte[]>();
+    private static HashMap<File, Git> loadedGit = new HashMap<File, Git>();
+    private static HashMap<File, String> loadedStamp = new HashMap<File, String>();
+
     public static void serializeGit(Git g) throws IOException {
-        FileOutputStream fileOut = new FileOutputStream(".gitlet/gitlet.ser");
-        ObjectOutputStream out = new ObjectOutputStream(fileOut);
-        out.writeObject(g);
-        out.close();
+        if (g == null) {
+            return;
+        }
+        long saving = Trace.begin();
+        File root = g.getRoot();
+        Journal journal = new Journal(new File(root, ".gitlet"));
+        g.saveChanges(journal);
+        byte[] state = encode(g);
+        if (!Arrays.equals(state, loadedState.get(root))) {
+            journal.writeAndTruncate(stateFile(root), 0, state);
+        }
+        journal.commit();
+        loadedState.put(root, state);
+        loadedGit.put(root, g);
+        loadedStamp.put(root, stamp(root));
+        g.foldMessages();
+        Trace.end("save", saving);
     }
 
-    public static Git load() {
+    //saves what a command that only looked may have learned, like hashes in the stat
+    //cache. Safe while other commands read the repository, unlike serializeGit
+    public static void saveCaches(Git g) throws IOException {
+        if (g == null) {
+            return;
+        }
+        long saving = Trace.begin();
+        g.saveCaches();
+        Trace.end("save", saving);
+    }
+
+    //true if g is null, if another process saved g's repository since it was loaded, or
+    //if g is not the Git of it this process loaded or saved last (a Repository when
+    //commands ran in between)
+    public static boolean isStale(Git g) throws IOException {
+        if (g == null || g != loadedGit.get(g.getRoot())) {
+            return true;
+        }
+        File state = stateFile(g.getRoot());
+        if (!state.exists()) {
+            return true;
+        }
+        return !Arrays.equals(Files.readAllBytes(state.toPath()), loadedState.get(g.getRoot()))
+               || !stamp(g.getRoot()).equals(loadedStamp.get(g.getRoot()));
+    }
+
+    //the repository whose working tree is root, or null if there is none. A journal a
+    //crash left behind must have been played first, which RepoLock does
+    public static Git load(File root) throws IOException {
+        long loading = Trace.begin();
+        root = FileUtil.absolute(root);
         try {
-            FileInputStream fin = new FileInputStream(".gitlet/gitlet.ser");
-            ObjectInputStream ois = new ObjectInputStream(fin);
-            Git g = (Git) ois.readObject();
-            ois.close();
+            loadedGit.remove(root);
+            if (NestedLayout.isNested(root)) {
+                return NestedLayout.migrate(root); //commits still nested inside each other
+            }
+            File stateFile = stateFile(root);
+            if (!stateFile.exists()) {
+                loadedState.remove(root);
+                return null;
+            }
+            String stamp = stamp(root); //before reading, a change in between is then stale
+            byte[] state = Files.readAllBytes(stateFile.toPath());
+            Trace.opened(1);
+            Trace.read(state.length);
+            Git g = decode(state, root);
+            loadedState.put(root, state);
+            loadedGit.put(root, g);
+            loadedStamp.put(root, stamp);
             return g;
-        } catch (IOException e) {
-            return null;
         } catch (ClassNotFoundException z) {
-            return null;
+            throw new IOException("unreadable gitlet repository", z);
+        } finally {
+            Trace.end("load", loading);
+        }
+    }
+
+    private static File stateFile(File root) {
+        return new File(root, ".gitlet/state");
+    }
+
+    //the size and modification time of each of STAMPED, which are never read here
+    private static String stamp(File root) throws IOException {
+        StringBuilder stamp = new StringBuilder();
+        for (String name: STAMPED) {
+            Path file = new File(root, ".gitlet/" + name).toPath();
+            if (Files.exists(file)) {
+                stamp.append(Files.size(file)).append(' ').append(Files.getLastModifiedTime(file));
+            }
+            stamp.append(';');
+        }
+        return stamp.toString();
+    }
+
+    //checks the magic number and version every binary repository file starts with
+    public static void readHeader(DataInput in, byte[] magic, int version) throws IOException {
+        byte[] found = new byte[magic.length];
+        in.readFully(found);
+        if (!Arrays.equals(found, magic)) {
+            throw new IOException("not a gitlet file");
+        }
+        int foundVersion = in.readUnsignedByte();
+        if (foundVersion != version) {
+            throw new IOException("unsupported gitlet file version " + foundVersion);
+        }
+    }
+
+    private static byte[] encode(Git g) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        Varint.write(out, g.getCommitCounter());
+        Varint.writeString(out, g.getCurrentBranch());
+        Varint.write(out, g.getBranches().size());
+        for (String branch: g.getBranches().keySet()) {
+            Varint.writeString(out, branch);
+            Varint.write(out, g.getBranches().get(branch));
+        }
+        writeFiles(out, g.getFilesAdded());
+        writeFiles(out, g.getFilesForRemoval());
+        return bytes.toByteArray();
+    }
+
+    private static Git decode(byte[] state, File root) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+        readHeader(in, MAGIC, VERSION);
+        Integer commit = Varint.readInt(in);
+        String currentBranch = Varint.readString(in);
+        HashMap<String, Integer> branches = new HashMap<String, Integer>();
+        int count = Varint.readInt(in);
+        for (int i = 0; i < count; i++) {
+            String branch = Varint.readString(in);
+            branches.put(branch, Varint.readInt(in));
+        }
+        HashSet<File> filesAdded = readFiles(in);
+        HashSet<File> fileForRemoval = readFiles(in);
+        return new Git(commit, currentBranch, branches, filesAdded, fileForRemoval, root);
+    }
+
+    private static void writeFiles(DataOutputStream out, HashSet<File> files) throws IOException {
+        Varint.write(out, files.size());
+        for (File file: files) {
+            Varint.writeString(out, file.getPath());
+        }
+    }
+
+    private static HashSet<File> readFiles(DataInput in) throws IOException {
+        HashSet<File> files = new HashSet<File>();
+        int count = Varint.readInt(in);
+        for (int i = 0; i < count; i++) {
+            files.add(new File(Varint.readString(in)));
         }
+        return files;
     }
 }
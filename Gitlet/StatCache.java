@@ -0,0 +1,158 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+
+
+//Remembers the size, modification time and inode of every working file we have hashed,
+//kept in .gitlet/index. While all three still match, the file's hash is taken from here
+//and the file is never opened. Anything else is hashed again by streaming the file.
+//Working files are given relative to the top of the working tree, root, as commits have them.
+//
+//An entry recorded less than a second after the file was modified is not trusted, since a
+//second write within the file system's timestamp granularity would keep the same mtime.
+
+public class StatCache {
+    private static final byte[] MAGIC = {'G', 'L', 'I', 'X'};
+    private static final int VERSION = 1;
+    private static final long RACY_MILLIS = 1000;
+
+    private static class Entry {
+        private long size;
+        private long modified;
+        private String inode;
+        private long recorded; //when we looked at the file
+        private String hash;
+
+        private boolean matches(BasicFileAttributes attrs) {
+            return size == attrs.size()
+                && modified == attrs.lastModifiedTime().toMillis()
+                && inode.equals(inodeOf(attrs))
+                && modified < recorded - RACY_MILLIS;
+        }
+    }
+
+    private File file;
+    private File root;
+    private HashMap<String, Entry> entries; //path --> entry, null until loaded
+    private boolean changed;
+
+    public StatCache(File file, File root) {
+        this.file = file;
+        this.root = root;
+    }
+
+    //hash of the working file's contents, only read from disk if its metadata changed. Safe
+    //to call from many threads, which hash their files at the same time
+    public String hash(File working) throws IOException {
+        File onDisk = FileUtil.resolve(root, working);
+        return hash(working, Files.readAttributes(onDisk.toPath(), BasicFileAttributes.class));
+    }
+
+    //the same with the attributes a directory walk has already read
+    public String hash(File working, BasicFileAttributes attrs) throws IOException {
+        synchronized (this) {
+            load();
+            Entry e = entries.get(working.getPath());
+            if (e != null && e.matches(attrs)) {
+                return e.hash;
+            }
+        }
+        //attrs were read first, so a write during hashing leaves a stale mtime behind
+        String hash = ObjectStore.hash(FileUtil.resolve(root, working));
+        synchronized (this) {
+            record(working, attrs, hash);
+        }
+        return hash;
+    }
+
+    //for files we just wrote ourselves and so already know the hash of
+    public synchronized void record(File working, String hash) throws IOException {
+        load();
+        File onDisk = FileUtil.resolve(root, working);
+        record(working, Files.readAttributes(onDisk.toPath(), BasicFileAttributes.class), hash);
+    }
+
+    public synchronized void save() throws IOException {
+        if (!changed) {
+            return;
+        }
+        //a name of its own, commands that only read may save at the same time
+        File temp = File.createTempFile("index", ".tmp", file.getParentFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(temp)))) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+            Varint.write(out, entries.size());
+            for (String path: entries.keySet()) {
+                Entry e = entries.get(path);
+                Varint.writeString(out, path);
+                Varint.write(out, e.size);
+                Varint.write(out, e.modified);
+                Varint.writeString(out, e.inode);
+                Varint.write(out, e.recorded);
+                out.write(ObjectStore.toBytes(e.hash));
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        Trace.opened(1);
+        Trace.wrote(file.length());
+        changed = false;
+    }
+
+    private void record(File working, BasicFileAttributes attrs, String hash) {
+        Entry e = new Entry();
+        e.size = attrs.size();
+        e.modified = attrs.lastModifiedTime().toMillis();
+        e.inode = inodeOf(attrs);
+        e.recorded = System.currentTimeMillis();
+        e.hash = hash;
+        entries.put(working.getPath(), e);
+        changed = true;
+    }
+
+    private void load() throws IOException {
+        if (entries != null) {
+            return;
+        }
+        entries = new HashMap<String, Entry>();
+        if (!file.exists()) {
+            return;
+        }
+        Trace.opened(1);
+        Trace.read(file.length());
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(file)))) {
+            Serialize.readHeader(in, MAGIC, VERSION);
+            int count = Varint.readInt(in);
+            byte[] raw = new byte[20];
+            for (int i = 0; i < count; i++) {
+                String path = Varint.readString(in);
+                Entry e = new Entry();
+                e.size = Varint.read(in);
+                e.modified = Varint.read(in);
+                e.inode = Varint.readString(in);
+                e.recorded = Varint.read(in);
+                in.readFully(raw);
+                e.hash = ObjectStore.toHex(raw);
+                entries.put(path, e);
+            }
+        } catch (IOException e) {
+            entries.clear(); //only a cache, everything gets hashed again
+        }
+    }
+
+    //(dev=..,ino=..) on unix, nothing on file systems without inodes
+    private static String inodeOf(BasicFileAttributes attrs) {
+        return attrs.fileKey() == null ? "" : attrs.fileKey().toString();
+    }
+}
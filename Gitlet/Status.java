@@ -0,0 +1,57 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+//What status reports, for programs using Repository: the branches, what is staged and how
+//the working directory differs from the head of the current branch. Files staged for
+//commit or removal are not listed again as modified, deleted or untracked.
+
+public class Status {
+    private String currentBranch;
+    //filled in by Git.status
+    final List<String> branches = new ArrayList<String>();
+    final List<File> staged = new ArrayList<File>();
+    final List<File> removed = new ArrayList<File>();
+    final List<File> modified = new ArrayList<File>();
+    final List<File> deleted = new ArrayList<File>();
+    final List<File> untracked = new ArrayList<File>();
+
+    Status(String currentBranch) {
+        this.currentBranch = currentBranch;
+    }
+
+    public String getCurrentBranch() {
+        return currentBranch;
+    }
+
+    public List<String> getBranches() {
+        return Collections.unmodifiableList(branches);
+    }
+
+    public List<File> getStaged() {
+        return Collections.unmodifiableList(staged);
+    }
+
+    public List<File> getRemoved() {
+        return Collections.unmodifiableList(removed);
+    }
+
+    public List<File> getModified() {
+        return Collections.unmodifiableList(modified);
+    }
+
+    public List<File> getDeleted() {
+        return Collections.unmodifiableList(deleted);
+    }
+
+    public List<File> getUntracked() {
+        return Collections.unmodifiableList(untracked);
+    }
+
+    //nothing staged and no tracked file changed, untracked files do not count
+    public boolean isClean() {
+        return staged.isEmpty() && removed.isEmpty() && modified.isEmpty() && deleted.isEmpty();
+    }
+}
@@ -0,0 +1,120 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+//Compares the working directory with a commit for status: which tracked files were
+//modified or deleted and which files are not tracked at all. Every directory is listed by
+//a fork-join task of its own, so a large tree is walked on all processors. A tracked
+//file's hash comes from the stat cache, so only files whose size, mtime or inode changed
+//are read. Directories matched by .gitletignore are skipped without being listed. Files
+//are reported relative to root, the top of the working tree.
+
+public class StatusWalker {
+    private Path root;
+    private HashMap<File, String> tracked; //file --> hash in the commit
+    private StatCache statCache;
+    private IgnoreRules ignore;
+    private Set<File> seen = ConcurrentHashMap.newKeySet();
+    private Set<File> modified = ConcurrentHashMap.newKeySet();
+    private Set<File> untracked = ConcurrentHashMap.newKeySet();
+    private TreeSet<File> deleted = new TreeSet<File>();
+
+    public StatusWalker(File root, HashMap<File, String> tracked, StatCache statCache,
+                        IgnoreRules ignore) {
+        this.root = root.toPath();
+        this.tracked = tracked;
+        this.statCache = statCache;
+        this.ignore = ignore;
+    }
+
+    //walks the working directory, then the get methods have the results
+    public void walk() throws IOException {
+        try {
+            ForkJoinPool.commonPool().invoke(new Walk(root));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        //tracked files the walk did not reach: gone, or in an ignored directory
+        for (File file: tracked.keySet()) {
+            if (!seen.contains(file)) {
+                if (!FileUtil.resolve(root.toFile(), file).isFile()) {
+                    deleted.add(file);
+                } else if (!statCache.hash(file).equals(tracked.get(file))) {
+                    modified.add(file);
+                }
+            }
+        }
+    }
+
+    public TreeSet<File> getModified() {
+        return new TreeSet<File>(modified);
+    }
+
+    public TreeSet<File> getDeleted() {
+        return deleted;
+    }
+
+    public TreeSet<File> getUntracked() {
+        return new TreeSet<File>(untracked);
+    }
+
+    @SuppressWarnings("serial") //a fork-join task, never serialized
+    private class Walk extends RecursiveAction {
+        private Path dir;
+
+        Walk(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected void compute() {
+            ArrayList<Walk> subdirectories = new ArrayList<Walk>();
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                for (Path child: children) {
+                    Path path = root.relativize(child); //a.txt, as it is tracked
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(child, BasicFileAttributes.class,
+                                                     LinkOption.NOFOLLOW_LINKS);
+                    } catch (NoSuchFileException e) {
+                        continue; //deleted since the directory was listed
+                    }
+                    if (ignore.isIgnored(path, attrs.isDirectory())) {
+                        continue;
+                    }
+                    if (attrs.isDirectory()) {
+                        subdirectories.add(new Walk(child));
+                        continue;
+                    }
+                    File file = path.toFile();
+                    String hash = tracked.get(file);
+                    if (hash == null) {
+                        untracked.add(file);
+                    } else {
+                        seen.add(file);
+                        if (!statCache.hash(file, attrs).equals(hash)) {
+                            modified.add(file);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            invokeAll(subdirectories);
+        }
+    }
+}
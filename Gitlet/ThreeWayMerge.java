@@ -0,0 +1,148 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+//Merges the changes two branches made to a file since their split point, line by line.
+//Both sides are diffed against the split point's version (see Diff). Changes to separate
+//regions are all kept; where the changes of the two sides overlap or touch and are not
+//the same, both versions are written between conflict markers, as git does:
+//
+//  <<<<<<< current branch
+//  its lines
+//  =======
+//  the other branch's lines
+//  >>>>>>> other branch
+//
+//Files with a NUL byte or stored in chunks are left to the caller as binary (see
+//ObjectStore.readText). Many files are merged on a pool of threads, one per processor.
+
+public class ThreeWayMerge {
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    public static class Result {
+        private byte[] contents;
+        private int conflicts;
+
+        Result(byte[] contents, int conflicts) {
+            this.contents = contents;
+            this.conflicts = conflicts;
+        }
+
+        public byte[] getContents() {
+            return contents;
+        }
+
+        //regions written between conflict markers, 0 if the merge was clean
+        public int getConflicts() {
+            return conflicts;
+        }
+    }
+
+    private ObjectStore objects;
+
+    public ThreeWayMerge(ObjectStore objects) {
+        this.objects = objects;
+    }
+
+    //files: file --> hashes of its split point version (null if it had none), the current
+    //branch's and the other branch's. Returns the merge of every file that is text
+    public HashMap<File, Result> mergeAll(HashMap<File, String[]> files, String ours,
+                                          String theirs) throws IOException {
+        ConcurrentHashMap<File, Result> results = new ConcurrentHashMap<File, Result>();
+        Parallel.forEach(files.keySet(), THREADS, file -> {
+            Result r = merge(files.get(file), ours, theirs);
+            if (r != null) {
+                results.put(file, r);
+            }
+        });
+        return new HashMap<File, Result>(results);
+    }
+
+    //merges base --> ours and base --> theirs, each a file's lines
+    public static Result merge(List<String> base, List<String> ours, List<String> theirs,
+                               String ourName, String theirName) {
+        ArrayList<Diff.Hunk> mine = Diff.diff(base, ours);
+        ArrayList<Diff.Hunk> other = Diff.diff(base, theirs);
+        StringBuilder out = new StringBuilder();
+        int conflicts = 0;
+        int done = 0; //base lines up to here are written
+        int i = 0;
+        int j = 0;
+        while (i < mine.size() || j < other.size()) {
+            //start a region at the first hunk of either side, then take in every hunk that
+            //overlaps or touches it until neither side has one
+            boolean fromMine = j == other.size() || (i < mine.size()
+                               && mine.get(i).getAStart() <= other.get(j).getAStart());
+            int start = fromMine ? mine.get(i).getAStart() : other.get(j).getAStart();
+            int end = start;
+            int firstMine = i;
+            int firstOther = j;
+            boolean grew = true;
+            while (grew) {
+                grew = false;
+                if (i < mine.size() && mine.get(i).getAStart() <= end) {
+                    end = Math.max(end, mine.get(i++).getAEnd());
+                    grew = true;
+                }
+                if (j < other.size() && other.get(j).getAStart() <= end) {
+                    end = Math.max(end, other.get(j++).getAEnd());
+                    grew = true;
+                }
+            }
+            append(out, base, done, start);
+            done = end;
+            String ourSide = apply(base, ours, mine.subList(firstMine, i), start, end);
+            String theirSide = apply(base, theirs, other.subList(firstOther, j), start, end);
+            if (firstOther == j || ourSide.equals(theirSide)) {
+                out.append(ourSide); //only we changed it, or both the same way
+            } else if (firstMine == i) {
+                out.append(theirSide);
+            } else {
+                conflicts += 1;
+                out.append("<<<<<<< ").append(ourName).append('\n');
+                out.append(ourSide).append(ourSide.isEmpty() || ourSide.endsWith("\n") ? "" : "\n");
+                out.append("=======\n");
+                out.append(theirSide).append(theirSide.isEmpty() || theirSide.endsWith("\n") ? "" : "\n");
+                out.append(">>>>>>> ").append(theirName).append('\n');
+            }
+        }
+        append(out, base, done, base.size());
+        return new Result(out.toString().getBytes(StandardCharsets.ISO_8859_1), conflicts);
+    }
+
+    //null if any version is binary
+    private Result merge(String[] hashes, String ours, String theirs) throws IOException {
+        String base = hashes[0] == null ? "" : objects.readText(hashes[0]);
+        String mine = objects.readText(hashes[1]);
+        String other = objects.readText(hashes[2]);
+        if (base == null || mine == null || other == null) {
+            return null;
+        }
+        return merge(Diff.lines(base), Diff.lines(mine), Diff.lines(other), ours, theirs);
+    }
+
+    //side's version of base lines start to end, given side's hunks within them
+    private static String apply(List<String> base, List<String> side, List<Diff.Hunk> hunks,
+                                int start, int end) {
+        StringBuilder out = new StringBuilder();
+        int done = start;
+        for (Diff.Hunk h: hunks) {
+            append(out, base, done, h.getAStart());
+            append(out, side, h.getBStart(), h.getBEnd());
+            done = h.getAEnd();
+        }
+        append(out, base, done, end);
+        return out.toString();
+    }
+
+    private static void append(StringBuilder out, List<String> lines, int from, int to) {
+        for (int i = from; i < to; i++) {
+            out.append(lines.get(i));
+        }
+    }
+}
@@ -0,0 +1,204 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+
+//Opt-in tracing of where a command's time and I/O went. `gitlet --trace <command>` traces
+//one command, and setting GITLET_TRACE to a file name traces every command (in a daemon,
+//every command it runs). Each traced command appends one JSON line to the file, or to
+//.gitlet/trace.jsonl for --trace, for aggregating with jq or a spreadsheet:
+//
+//  {"time":"2026-10-18T12:00:00Z","command":"add","outcome":"ok","millis":41.2,
+//   "phases":{"execute":30.1,"hash":22.5,"load":1.3,"save":9.6},"bytesRead":...}
+//
+//Phases are milliseconds and nest: hash and copy happen inside execute, and when files are
+//hashed on several threads at once their times add up. Counters are bytes read and written,
+//files opened, store objects read and written (blobs and tree nodes) and commit records
+//read and written and files synced to disk. Commits are read through a memory map, so
+//their bytes are not counted.
+//
+//Without tracing every call here is a check of one static field.
+
+public class Trace {
+    private static final String DEFAULT_FILE = ".gitlet/trace.jsonl";
+
+    private enum Counter {
+        BYTES_READ("bytesRead"), BYTES_WRITTEN("bytesWritten"), FILES_OPENED("filesOpened"),
+        OBJECTS_READ("objectsRead"), OBJECTS_WRITTEN("objectsWritten"),
+        COMMITS_READ("commitsRead"), COMMITS_WRITTEN("commitsWritten"), SYNCS("syncs");
+
+        private final String name;
+
+        Counter(String name) {
+            this.name = name;
+        }
+    }
+
+    private static volatile boolean enabled;
+    private static File file; //null unless --trace or GITLET_TRACE asked for tracing
+    private static String command;
+    private static long startTime;
+    private static Instant startInstant;
+    private static Throwable failed; //a failure the command reported and carried on from
+    private static ConcurrentHashMap<String, LongAdder> phases =
+        new ConcurrentHashMap<String, LongAdder>();
+    private static LongAdder[] counters = new LongAdder[Counter.values().length];
+
+    //takes a leading --trace off args and decides from it and GITLET_TRACE whether the
+    //command will be traced. Returns the rest of args
+    public static String[] configure(String[] args) {
+        String env = System.getenv("GITLET_TRACE");
+        boolean flag = args.length > 0 && args[0].equals("--trace");
+        if (flag) {
+            String[] rest = new String[args.length - 1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+            args = rest;
+        }
+        if (env != null && !env.isEmpty()) {
+            file = new File(env);
+        } else {
+            file = flag ? new File(DEFAULT_FILE) : null;
+        }
+        return args;
+    }
+
+    //starts tracing a command, if configure asked for it
+    public static void start(String name) {
+        enabled = file != null;
+        if (!enabled) {
+            return;
+        }
+        command = name;
+        failed = null;
+        phases.clear();
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        startInstant = Instant.now();
+        startTime = System.nanoTime();
+    }
+
+    //a failure the command printed instead of throwing, like a GitletException, so the
+    //outcome shows it
+    public static void failed(Throwable failure) {
+        if (enabled) {
+            failed = failure;
+        }
+    }
+
+    //appends the command's line to the trace file. failure is what went wrong, null if
+    //nothing did. No line is written when the file's directory does not exist (e.g.
+    //.gitlet before init)
+    public static void finish(Throwable failure) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        enabled = false;
+        if (failure == null) {
+            failure = failed;
+        }
+        long elapsed = System.nanoTime() - startTime;
+        StringBuilder line = new StringBuilder();
+        line.append("{\"time\":").append(quote(startInstant.toString()));
+        line.append(",\"command\":").append(quote(command));
+        line.append(",\"outcome\":").append(quote(failure == null ? "ok" : failure.toString()));
+        line.append(",\"millis\":").append(millis(elapsed));
+        line.append(",\"phases\":{");
+        String separator = "";
+        for (Map.Entry<String, LongAdder> phase: new TreeMap<String, LongAdder>(phases).entrySet()) {
+            line.append(separator).append(quote(phase.getKey())).append(':')
+                .append(millis(phase.getValue().sum()));
+            separator = ",";
+        }
+        line.append('}');
+        for (Counter c: Counter.values()) {
+            line.append(",\"").append(c.name).append("\":").append(counters[c.ordinal()].sum());
+        }
+        line.append("}\n");
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir.isDirectory()) {
+            Files.write(file.toPath(), line.toString().getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    //the start of a phase, to hand to end. 0 when not tracing, to save the clock read
+    public static long begin() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public static void end(String phase, long begin) {
+        if (enabled && begin != 0) {
+            phases.computeIfAbsent(phase, p -> new LongAdder()).add(System.nanoTime() - begin);
+        }
+    }
+
+    public static void read(long bytes) {
+        add(Counter.BYTES_READ, bytes);
+    }
+
+    public static void wrote(long bytes) {
+        add(Counter.BYTES_WRITTEN, bytes);
+    }
+
+    public static void opened(int files) {
+        add(Counter.FILES_OPENED, files);
+    }
+
+    public static void objectRead() {
+        add(Counter.OBJECTS_READ, 1);
+    }
+
+    public static void objectWritten() {
+        add(Counter.OBJECTS_WRITTEN, 1);
+    }
+
+    public static void commitRead() {
+        add(Counter.COMMITS_READ, 1);
+    }
+
+    public static void commitsWritten(int count) {
+        add(Counter.COMMITS_WRITTEN, count);
+    }
+
+    public static void synced() {
+        add(Counter.SYNCS, 1);
+    }
+
+    private static void add(Counter c, long n) {
+        if (enabled) {
+            counters[c.ordinal()].add(n);
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    private static String quote(String s) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
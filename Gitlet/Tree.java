@@ -0,0 +1,286 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+
+//The files of a commit as a Merkle tree: one node per directory, stored in the object
+//store under the hash of its entries. Trees are never changed in place. with and without
+//copy only the nodes on the path to the file and share every other subtree, so a commit
+//that touches one file allocates one node per directory level instead of a whole map.
+//Nodes read from disk are loaded the first time one of their entries is needed.
+//
+//A node is a header, then a varint count and for each entry its name, a type byte,
+//the 20 byte hash and, for files, the varint id + 1 of the commit that last changed it.
+
+public class Tree {
+    private static final byte[] MAGIC = {'G', 'L', 'T', 'R'};
+    private static final int VERSION = 1;
+    private static final int FILE = 0;
+    private static final int DIRECTORY = 1;
+
+    private static class Entry {
+        private String hash; //contents of a file, or the subtree once it has been saved
+        private Integer lastModified; //null for directories
+        private Tree subtree; //null for files
+
+        private boolean isDirectory() {
+            return subtree != null;
+        }
+    }
+
+    private ObjectStore store;
+    private TreeMap<String, Entry> entries; //null until read from the store
+    private String hash; //null until saved
+
+    private Tree(ObjectStore store, TreeMap<String, Entry> entries, String hash) {
+        this.store = store;
+        this.entries = entries;
+        this.hash = hash;
+    }
+
+    public static Tree empty(ObjectStore store) {
+        return new Tree(store, new TreeMap<String, Entry>(), null);
+    }
+
+    //a tree that is only read from the store once something asks for its entries
+    public static Tree load(ObjectStore store, String hash) {
+        return new Tree(store, null, hash);
+    }
+
+    //the hash this tree is stored under, null if it has changed since it was saved
+    public String getHash() {
+        return hash;
+    }
+
+    //hash of the file's contents, or null if the tree does not have it
+    public String getHash(File file) throws IOException {
+        Entry e = find(file);
+        return e == null ? null : e.hash;
+    }
+
+    public Integer getLastModified(File file) throws IOException {
+        Entry e = find(file);
+        return e == null ? null : e.lastModified;
+    }
+
+    public boolean contains(File file) throws IOException {
+        return find(file) != null;
+    }
+
+    public Tree with(File file, String fileHash, Integer lastModified) throws IOException {
+        Entry e = new Entry();
+        e.hash = fileHash;
+        e.lastModified = lastModified;
+        return with(split(file), 0, e);
+    }
+
+    public Tree without(File file) throws IOException {
+        return without(split(file), 0);
+    }
+
+    //every file in the tree: .txt --> hash in objects
+    public HashMap<File, String> files() throws IOException {
+        HashMap<File, String> files = new HashMap<File, String>();
+        collect(null, files);
+        return files;
+    }
+
+    //adds every object the saved tree is made of to paths: hash --> the path it is stored
+    //under, directories ending in /. Subtrees already in paths are not read again, so
+    //calling this for each commit in turn only reads the nodes that commit changed
+    public void paths(HashMap<String, String> paths) throws IOException {
+        paths(null, paths);
+    }
+
+    //the files whose contents differ between from and to: path --> hash in to, or null
+    //where to does not have the file. Subtrees with the same hash are skipped unread,
+    //so the cost depends on how much changed rather than on the size of the trees
+    public static HashMap<File, String> diff(Tree from, Tree to) throws IOException {
+        HashMap<File, String> changes = new HashMap<File, String>();
+        diff(from, to, null, changes);
+        return changes;
+    }
+
+    //writes every node that is not in the store yet and returns the root's hash
+    public String save() throws IOException {
+        if (hash != null) {
+            return hash; //unchanged since it was loaded or last saved
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        Varint.write(out, entries.size());
+        for (String name: entries.keySet()) {
+            Entry e = entries.get(name);
+            Varint.writeString(out, name);
+            if (e.isDirectory()) {
+                e.hash = e.subtree.save();
+                out.writeByte(DIRECTORY);
+                out.write(ObjectStore.toBytes(e.hash));
+            } else {
+                out.writeByte(FILE);
+                out.write(ObjectStore.toBytes(e.hash));
+                Varint.write(out, e.lastModified == null ? 0 : e.lastModified + 1);
+            }
+        }
+        hash = store.writeBytes(bytes.toByteArray());
+        return hash;
+    }
+
+    private TreeMap<String, Entry> entries() throws IOException {
+        if (entries == null) {
+            entries = new TreeMap<String, Entry>();
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(store.readBytes(hash)));
+            Serialize.readHeader(in, MAGIC, VERSION);
+            int count = Varint.readInt(in);
+            byte[] raw = new byte[20];
+            for (int i = 0; i < count; i++) {
+                String name = Varint.readString(in);
+                int type = in.readUnsignedByte();
+                in.readFully(raw);
+                Entry e = new Entry();
+                e.hash = ObjectStore.toHex(raw);
+                if (type == DIRECTORY) {
+                    e.subtree = load(store, e.hash);
+                } else {
+                    int lastModified = Varint.readInt(in);
+                    e.lastModified = lastModified == 0 ? null : lastModified - 1;
+                }
+                entries.put(name, e);
+            }
+        }
+        return entries;
+    }
+
+    //either tree may be null, meaning the directory is missing on that side
+    private static void diff(Tree from, Tree to, File dir, HashMap<File, String> changes) 
+            throws IOException {
+        if (from == to || (from != null && to != null && from.hash != null 
+                           && from.hash.equals(to.hash))) {
+            return;
+        }
+        TreeMap<String, Entry> before = from == null ? new TreeMap<String, Entry>() : from.entries();
+        TreeMap<String, Entry> after = to == null ? new TreeMap<String, Entry>() : to.entries();
+        TreeSet<String> names = new TreeSet<String>(before.keySet());
+        names.addAll(after.keySet());
+        for (String name: names) {
+            Entry old = before.get(name);
+            Entry e = after.get(name);
+            File path = dir == null ? new File(name) : new File(dir, name);
+            Tree oldDir = old != null && old.isDirectory() ? old.subtree : null;
+            Tree newDir = e != null && e.isDirectory() ? e.subtree : null;
+            if (oldDir != null || newDir != null) {
+                diff(oldDir, newDir, path, changes);
+            }
+            boolean oldFile = old != null && !old.isDirectory();
+            boolean newFile = e != null && !e.isDirectory();
+            if (newFile && (!oldFile || !old.hash.equals(e.hash))) {
+                changes.put(path, e.hash);
+            } else if (oldFile && !newFile) {
+                changes.put(path, null);
+            }
+        }
+    }
+
+    private Entry find(File file) throws IOException {
+        String[] names = split(file);
+        Tree node = this;
+        for (int i = 0; i < names.length; i++) {
+            Entry e = node.entries().get(names[i]);
+            if (e == null || (i < names.length - 1) != e.isDirectory()) {
+                return null;
+            }
+            if (i == names.length - 1) {
+                return e;
+            }
+            node = e.subtree;
+        }
+        return null;
+    }
+
+    private Tree with(String[] names, int i, Entry file) throws IOException {
+        TreeMap<String, Entry> copy = new TreeMap<String, Entry>(entries());
+        if (i == names.length - 1) {
+            copy.put(names[i], file);
+        } else {
+            Entry old = copy.get(names[i]);
+            Tree child = old != null && old.isDirectory() ? old.subtree : empty(store);
+            Entry dir = new Entry();
+            dir.subtree = child.with(names, i + 1, file);
+            copy.put(names[i], dir);
+        }
+        return new Tree(store, copy, null);
+    }
+
+    private Tree without(String[] names, int i) throws IOException {
+        Entry old = entries().get(names[i]);
+        if (old == null) {
+            return this;
+        }
+        TreeMap<String, Entry> copy = new TreeMap<String, Entry>(entries());
+        if (i == names.length - 1) {
+            copy.remove(names[i]);
+        } else {
+            if (!old.isDirectory()) {
+                return this;
+            }
+            Tree child = old.subtree.without(names, i + 1);
+            if (child == old.subtree) {
+                return this;
+            } else if (child.entries().isEmpty()) {
+                copy.remove(names[i]); //directories only exist while they hold files
+            } else {
+                Entry dir = new Entry();
+                dir.subtree = child;
+                copy.put(names[i], dir);
+            }
+        }
+        return new Tree(store, copy, null);
+    }
+
+    private void collect(File dir, HashMap<File, String> files) throws IOException {
+        for (String name: entries().keySet()) {
+            Entry e = entries().get(name);
+            File path = dir == null ? new File(name) : new File(dir, name);
+            if (e.isDirectory()) {
+                e.subtree.collect(path, files);
+            } else {
+                files.put(path, e.hash);
+            }
+        }
+    }
+
+    private void paths(File dir, HashMap<String, String> paths) throws IOException {
+        String path = dir == null ? "/" : dir.getPath() + "/";
+        if (paths.putIfAbsent(save(), path) != null) {
+            return;
+        }
+        for (String name: entries().keySet()) {
+            Entry e = entries().get(name);
+            File child = dir == null ? new File(name) : new File(dir, name);
+            if (e.isDirectory()) {
+                e.subtree.paths(child, paths);
+            } else {
+                paths.putIfAbsent(e.hash, child.getPath());
+            }
+        }
+    }
+
+    //hey/./hey.txt and hey/hey.txt are the same file
+    private static String[] split(File file) {
+        Path path = file.toPath().normalize();
+        String[] names = new String[path.getNameCount()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = path.getName(i).toString();
+        }
+        return names;
+    }
+}
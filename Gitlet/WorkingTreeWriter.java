@@ -0,0 +1,40 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+
+
+//Writes objects out to working files on a bounded pool of threads, so checkouts that
+//change many files keep a fast disk busy instead of waiting on one write at a time.
+//Every parent directory is created once, before any file is written. The number of
+//threads is -Dgitlet.ioThreads, by default one per processor. Files are given relative
+//to root, the top of the working tree.
+
+public class WorkingTreeWriter {
+    private static final int THREADS = Integer.getInteger("gitlet.ioThreads",
+                                           Runtime.getRuntime().availableProcessors());
+
+    private ObjectStore objects;
+    private File root;
+
+    public WorkingTreeWriter(ObjectStore objects, File root) {
+        this.objects = objects;
+        this.root = root;
+    }
+
+    //files: working file --> hash of the contents to write there
+    public void write(HashMap<File, String> files) throws IOException {
+        HashSet<File> dirs = new HashSet<File>();
+        HashMap<File, String> onDisk = new HashMap<File, String>();
+        for (File file: files.keySet()) {
+            onDisk.put(FileUtil.resolve(root, file), files.get(file));
+        }
+        for (File file: onDisk.keySet()) {
+            File dir = file.getParentFile();
+            if (dir != null && dirs.add(dir) && !dir.isDirectory()) {
+                dir.mkdirs();
+            }
+        }
+        Parallel.forEach(onDisk.keySet(), THREADS, file -> objects.copyTo(onDisk.get(file), file));
+    }
+}
@@ -0,0 +1,197 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+import com.sun.management.ThreadMXBean;
+
+
+//Times the commands users wait on: add, commit, checkout, log, merge and rebase, each on a
+//repository from RepoGenerator and run the way the command line runs it (lock, load, run, save;
+//see RepoGenerator.run). Every command changes the repository, so what one needs first
+//(an edited file, a staged file, two diverged branches) is set up before each run and not
+//timed. Each benchmark runs --warmup times untimed, so the JIT has compiled gitlet, and
+//then --iterations times, and prints the mean, fastest and slowest run and the bytes the
+//command allocated per run. Those are counted on the benchmark's thread only (the JVM's
+//per thread allocation counter), so what the pools writing files or walking the working
+//tree allocate is not in them.
+//
+//This is a plain harness rather than JMH: JMH only generates code for benchmarks in a
+//named package, and gitlet's classes are all in the default one, which no package can
+//import. See README for building and running.
+//
+//  java GitletBenchmark [--dir path] [--files n] [--fileSize n] [--commits n]
+//                       [--branches n] [--warmup n] [--iterations n] [benchmark ...]
+
+public class GitletBenchmark {
+    private interface Step {
+        void run() throws IOException;
+    }
+
+    //what a benchmark times, and what it needs done before and after, untimed
+    private static class Benchmark {
+        private Step before;
+        private Step command;
+        private Step after;
+
+        Benchmark(Step before, Step command, Step after) {
+            this.before = before;
+            this.command = command;
+            this.after = after;
+        }
+    }
+
+    private RepoGenerator generator;
+    private String edited;
+    private boolean onBranch;
+
+    GitletBenchmark(RepoGenerator generator) {
+        this.generator = generator;
+    }
+
+    private LinkedHashMap<String, Benchmark> benchmarks() {
+        LinkedHashMap<String, Benchmark> all = new LinkedHashMap<String, Benchmark>();
+        Step nothing = () -> {
+            return;
+        };
+
+        //a file edited but not added yet
+        all.put("add", new Benchmark(() -> edited = generator.edit().getPath(),
+                                     () -> generator.run("add", edited), nothing));
+
+        //a few files edited and added, ready to commit
+        all.put("commit", new Benchmark(() -> {
+            for (int i = 0; i < 10; i++) {
+                generator.run("add", generator.edit().getPath());
+            }
+        }, () -> generator.run("commit", "benchmark"), nothing));
+
+        //back and forth between master and b0
+        all.put("checkout", new Benchmark(nothing, () -> {
+            onBranch = !onBranch;
+            generator.run("checkout", onBranch ? "b0" : "master");
+        }, nothing));
+
+        all.put("log", new Benchmark(nothing, () -> generator.run("log"), nothing));
+
+        //master and b0 each a commit past where they last met, master checked out
+        all.put("merge", new Benchmark(() -> {
+            generator.run("checkout", "b0");
+            generator.commitChanges("b0 before merge");
+            generator.run("checkout", "master");
+            generator.commitChanges("master before merge");
+        }, () -> generator.run("merge", "b0"), nothing));
+
+        //b1 checked out and behind a new commit on master
+        all.put("rebase", new Benchmark(() -> {
+            generator.run("checkout", "master");
+            generator.commitChanges("master before rebase");
+            generator.run("checkout", "b1");
+        }, () -> generator.run("rebase", "master"),
+           () -> generator.run("checkout", "master")));
+        return all;
+    }
+
+    //fills in the nanoseconds and the bytes allocated of each timed run
+    private static void measure(Benchmark b, int warmup, long[] times, long[] allocated)
+            throws IOException {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (int i = 0; i < warmup; i++) {
+            b.before.run();
+            b.command.run();
+            b.after.run();
+        }
+        for (int i = 0; i < times.length; i++) {
+            b.before.run();
+            long bytes = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            b.command.run();
+            times[i] = System.nanoTime() - start;
+            allocated[i] = threads.getCurrentThreadAllocatedBytes() - bytes;
+            b.after.run();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        File dir = Gitlet.CURRENT;
+        int files = 1000;
+        int fileSize = 4096;
+        int commits = 100;
+        int branches = 4;
+        int warmup = 10;
+        int iterations = 20;
+        int first = 0;
+        for (; first + 1 < args.length && args[first].startsWith("--"); first += 2) {
+            if (args[first].equals("--dir")) {
+                dir = new File(args[first + 1]);
+                continue;
+            }
+            int value = Integer.parseInt(args[first + 1]);
+            switch (args[first]) {
+                case "--files":
+                    files = value;
+                    break;
+                case "--fileSize":
+                    fileSize = value;
+                    break;
+                case "--commits":
+                    commits = value;
+                    break;
+                case "--branches":
+                    branches = value;
+                    break;
+                case "--warmup":
+                    warmup = value;
+                    break;
+                case "--iterations":
+                    iterations = Math.max(1, value);
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[first]);
+                    return;
+            }
+        }
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            RepoGenerator generator = new RepoGenerator(dir, files, fileSize, commits, branches,
+                                                        61);
+            generator.generate();
+            LinkedHashMap<String, Benchmark> all = new GitletBenchmark(generator).benchmarks();
+            String[] chosen = first < args.length ? Arrays.copyOfRange(args, first, args.length)
+                                                  : all.keySet().toArray(new String[0]);
+            out.println(files + " files of " + fileSize + " bytes, " + commits + " commits, "
+                        + branches + " branches; " + warmup + " warmup and " + iterations
+                        + " timed runs each");
+            out.println(String.format(Locale.ROOT, "%-10s %10s %10s %10s %14s", "benchmark",
+                                      "mean ms", "min ms", "max ms", "bytes/op"));
+            for (String name: chosen) {
+                Benchmark b = all.get(name);
+                if (b == null) {
+                    out.println("Unknown benchmark " + name);
+                    continue;
+                }
+                long[] times = new long[iterations];
+                long[] allocated = new long[iterations];
+                measure(b, warmup, times, allocated);
+                long total = 0;
+                long bytes = 0;
+                for (int i = 0; i < iterations; i++) {
+                    total += times[i];
+                    bytes += allocated[i];
+                }
+                Arrays.sort(times);
+                out.println(String.format(Locale.ROOT, "%-10s %10.2f %10.2f %10.2f %14d", name,
+                                          total / 1e6 / times.length, times[0] / 1e6,
+                                          times[times.length - 1] / 1e6, bytes / iterations));
+            }
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
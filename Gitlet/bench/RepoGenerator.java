@@ -0,0 +1,213 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+
+
+//Builds a synthetic repository in a directory, the current one unless --dir says
+//otherwise, for the benchmarks and for sizing repositories. The same settings and seed always give the same files and history:
+//
+//  files       text files under data/, 100 per directory
+//  fileSize    bytes in each file, in lines of random words
+//  commits     commits on master after the first, each rewriting a few lines in
+//              changesPerCommit files
+//  branches    branches b0, b1, ... fanning out from master's head, each with
+//              branchCommits commits of its own
+//
+//Commands run in this process the way the command line runs them, taking the repository
+//lock and loading and saving the repository each time, so what gets measured is what a
+//user waits for. The directory's repository is replaced, so this refuses to run in any
+//but an empty directory (or one it made earlier, marked by .gitlet-bench), and only ever
+//deletes .gitlet and data/ there.
+//
+//  java RepoGenerator [--dir path] [--files n] [--fileSize n] [--commits n]
+//                     [--branches n] [--seed n]
+
+public class RepoGenerator {
+    private static final String MARKER = ".gitlet-bench";
+    private static final String[] WORDS = {"merge", "tree", "commit", "branch", "object",
+                                           "hash", "pack", "delta", "index", "log",
+                                           "rebase", "checkout", "status", "chunk"};
+
+    private File root;
+    private int files;
+    private int fileSize;
+    private int commits;
+    private int branches;
+    private int branchCommits = 5;
+    private int changesPerCommit = 10;
+    private Random random;
+
+    public RepoGenerator(File root, int files, int fileSize, int commits, int branches,
+                         long seed) {
+        this.root = FileUtil.absolute(root);
+        this.files = files;
+        this.fileSize = fileSize;
+        this.commits = commits;
+        this.branches = branches;
+        this.random = new Random(seed);
+    }
+
+    public void generate() throws IOException {
+        root.mkdirs();
+        checkScratch();
+        new File(root, MARKER).createNewFile();
+        FileUtil.recursiveDelete(new File(root, ".gitlet"));
+        FileUtil.recursiveDelete(new File(root, "data"));
+
+        run("init");
+        for (int i = 0; i < files; i++) {
+            File file = new File(root, file(i).getPath());
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), text(fileSize).getBytes(StandardCharsets.UTF_8));
+        }
+        run("add", "data");
+        run("commit", "generated " + files + " files");
+        for (int c = 1; c <= commits; c++) {
+            commitChanges("commit " + c);
+        }
+        for (int b = 0; b < branches; b++) {
+            run("branch", "b" + b);
+            run("checkout", "b" + b);
+            for (int c = 1; c <= branchCommits; c++) {
+                commitChanges("b" + b + " commit " + c);
+            }
+            run("checkout", "master");
+        }
+    }
+
+    //rewrites a few lines in changesPerCommit files, adds them and commits
+    public void commitChanges(String message) throws IOException {
+        for (int i = 0; i < changesPerCommit; i++) {
+            run("add", edit().getPath());
+        }
+        run("commit", message);
+    }
+
+    //rewrites a few lines of a random file and returns it, relative to the root
+    public File edit() throws IOException {
+        File file = file(random.nextInt(files));
+        Path onDisk = new File(root, file.getPath()).toPath();
+        String[] lines = new String(Files.readAllBytes(onDisk), StandardCharsets.UTF_8)
+                         .split("\n", -1);
+        for (int i = 0; i < 3; i++) {
+            int line = random.nextInt(lines.length);
+            lines[line] = text(Math.max(1, lines[line].length())).trim();
+        }
+        Files.write(onDisk, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    //one command the way the command line runs it: lock, load, run without prompts, save
+    public void run(String... args) throws IOException {
+        try (RepoLock lock = RepoLock.acquire(root, args[0])) {
+            Git g = Serialize.load(root);
+            if (g != null) {
+                g.setNonInteractive(true);
+            }
+            g = Gitlet.execute(root, g, args);
+            if (g != null) {
+                g.setNonInteractive(false); //as saved by the command line
+            }
+            if (lock.isShared()) {
+                Serialize.saveCaches(g);
+            } else {
+                Serialize.serializeGit(g);
+            }
+        }
+    }
+
+    private static File file(int i) {
+        return new File(String.format("data/d%03d/f%05d.txt", i / 100, i));
+    }
+
+    //about size bytes of random words, in lines of up to 80
+    private String text(int size) {
+        StringBuilder text = new StringBuilder(size + 16);
+        int line = 0;
+        while (text.length() < size) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (line + word.length() > 80) {
+                text.append('\n');
+                line = 0;
+            }
+            text.append(word).append(' ');
+            line += word.length() + 1;
+        }
+        return text.toString();
+    }
+
+    private void checkScratch() {
+        HashSet<String> ours = new HashSet<String>(Arrays.asList(MARKER, ".gitlet", "data"));
+        String[] names = root.list();
+        boolean marked = Arrays.asList(names).contains(MARKER);
+        for (String name: names) {
+            if (!ours.contains(name) || (!marked && !name.equals(MARKER))) {
+                throw new IllegalStateException("give the generator and benchmarks an empty "
+                                                + "directory, they replace the repository in "
+                                                + root);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        File dir = Gitlet.CURRENT;
+        int files = 1000;
+        int fileSize = 4096;
+        int commits = 100;
+        int branches = 4;
+        long seed = 61;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--dir")) {
+                dir = new File(args[i + 1]);
+                continue;
+            }
+            long value = Long.parseLong(args[i + 1]);
+            switch (args[i]) {
+                case "--files":
+                    files = (int) value;
+                    break;
+                case "--fileSize":
+                    fileSize = (int) value;
+                    break;
+                case "--commits":
+                    commits = (int) value;
+                    break;
+                case "--branches":
+                    branches = (int) value;
+                    break;
+                case "--seed":
+                    seed = value;
+                    break;
+                default:
+                    System.out.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+        PrintStream out = System.out;
+        long start = System.nanoTime();
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            new RepoGenerator(dir, files, fileSize, commits, branches, seed).generate();
+        } finally {
+            System.setOut(out);
+        }
+        out.println("Generated " + files + " files, " + (commits + 1) + " commits on master and "
+                    + branches + " branches in " + (System.nanoTime() - start) / 1000000 + " ms.");
+        out.println(".gitlet is " + size(new File(dir, ".gitlet")) / 1024 + " KB.");
+    }
+
+    private static long size(File dir) {
+        long size = 0;
+        for (File f: dir.listFiles()) {
+            size += f.isDirectory() ? size(f) : f.length();
+        }
+        return size;
+    }
+}